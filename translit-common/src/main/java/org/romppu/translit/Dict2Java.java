@@ -0,0 +1,413 @@
+package org.romppu.translit;
+
+import org.romppu.translit.dictionary.ContextTranslitDictionary;
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.dictionary.TranslitDictionaryFactory;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles a dictionary into a Java source of a class which implements {@link TranslitDictionary} and provides
+ * its own {@link org.romppu.translit.engine.TranslitMatcher}. The pairs are constants of the class and the match step is
+ * a tree of nested <code>switch</code> statements, so loading of the dictionary does no parsing and the JIT compiles
+ * the matching logic into straight code. {@link org.romppu.translit.engine.TranslitEngine} uses the generated matcher
+ * instead of compiling the dictionary.
+ * The generated dictionary is read-only. The conditions of a {@link ContextTranslitDictionary} are not supported.
+ * The generator is run by the <code>generate-dictionary</code> profile of translit-common.
+ */
+public class Dict2Java {
+
+    private static final String INDENT = "    ";
+    private static final String ERR_CONDITIONS = "Dictionary with conditions cannot be compiled into Java source";
+
+    private final TranslitDictionary dictionary;
+    private final String packageName;
+    private final String simpleName;
+
+    public Dict2Java(TranslitDictionary dictionary, String className) {
+        if (dictionary instanceof ContextTranslitDictionary && ((ContextTranslitDictionary) dictionary).hasConditions()) {
+            throw new IllegalArgumentException(ERR_CONDITIONS);
+        }
+        this.dictionary = dictionary;
+        int dot = className.lastIndexOf('.');
+        this.packageName = dot < 0 ? null : className.substring(0, dot);
+        this.simpleName = className.substring(dot + 1);
+    }
+
+    public static void main(String... params) {
+        if (params.length < 3) {
+            System.out.println("Usage: Dict2Java dictionary className outputDirectory");
+            System.exit(-1);
+        }
+        TranslitDictionary dictionary = TranslitDictionaryFactory.newInstance().newTranslitDictionary(params[0]);
+        Dict2Java generator = new Dict2Java(dictionary, params[1]);
+        try {
+            File file = new File(params[2], params[1].replace('.', File.separatorChar) + ".java");
+            file.getParentFile().mkdirs();
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF8"));
+            try {
+                generator.generate(writer);
+            } finally {
+                writer.close();
+            }
+            System.out.println("Generated " + file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Writes the source of the class to the specified {@see writer}. The source contains only ASCII characters.
+     *
+     * @param writer receives the source
+     * @throws IOException
+     */
+    public void generate(Writer writer) throws IOException {
+        PrintWriter out = new PrintWriter(writer);
+        if (packageName != null) {
+            out.println("package " + packageName + ";");
+            out.println();
+        }
+        out.println("import org.romppu.translit.dictionary.TranslitDictionary;");
+        out.println("import org.romppu.translit.engine.TranslitMatcher;");
+        out.println();
+        out.println("import java.io.InputStream;");
+        out.println("import java.io.OutputStream;");
+        out.println("import java.util.ArrayList;");
+        out.println("import java.util.List;");
+        out.println();
+        out.println("/**");
+        out.println(" * Generated by {@link org.romppu.translit.Dict2Java} from " + javadoc(dictionary.getInitialParam()));
+        out.println(" * Do not edit.");
+        out.println(" */");
+        out.println("public final class " + simpleName + " implements TranslitDictionary, TranslitMatcher.Provider {");
+        out.println();
+        writeValues(out, "LEFT", TranslitDictionary.Side.LEFT);
+        writeValues(out, "RIGHT", TranslitDictionary.Side.RIGHT);
+        out.println();
+        out.println(INDENT + "private final TranslitMatcher matcher = new Matcher();");
+        out.println(INDENT + "private String description = " + literal(dictionary.getDescription()) + ";");
+        out.println();
+        writeDictionaryMethods(out);
+        writeMatchMethods(out);
+        out.println("}");
+        out.flush();
+    }
+
+    /**
+     * Writes the source of a class which implements only {@link org.romppu.translit.engine.TranslitMatcher},
+     * the instance of the dictionary is passed to the constructor of the class. The source contains only ASCII
+     * characters.
+     *
+     * @param writer receives the source
+     * @throws IOException
+     */
+    public void generateMatcher(Writer writer) throws IOException {
+        PrintWriter out = new PrintWriter(writer);
+        String i2 = INDENT + INDENT;
+        if (packageName != null) {
+            out.println("package " + packageName + ";");
+            out.println();
+        }
+        out.println("import org.romppu.translit.dictionary.TranslitDictionary;");
+        out.println("import org.romppu.translit.engine.TranslitMatcher;");
+        out.println();
+        out.println("/**");
+        out.println(" * Generated by {@link org.romppu.translit.Dict2Java}");
+        out.println(" */");
+        out.println("public final class " + simpleName + " implements TranslitMatcher {");
+        out.println();
+        out.println(INDENT + "private final TranslitDictionary dictionary;");
+        out.println();
+        out.println(INDENT + "public " + simpleName + "(TranslitDictionary dictionary) {");
+        out.println(i2 + "this.dictionary = dictionary;");
+        out.println(INDENT + "}");
+        out.println();
+        out.println(INDENT + "@Override");
+        out.println(INDENT + "public int match(CharSequence text, int position, TranslitDictionary.Side side) {");
+        out.println(i2 + "return side == TranslitDictionary.Side.LEFT ? matchLeft(text, position) : matchRight(text, position);");
+        out.println(INDENT + "}");
+        out.println();
+        out.println(INDENT + "@Override");
+        out.println(INDENT + "public TranslitDictionary getDictionary() {");
+        out.println(i2 + "return dictionary;");
+        out.println(INDENT + "}");
+        out.println();
+        writeMatch(out, "matchLeft", TranslitDictionary.Side.LEFT);
+        writeMatch(out, "matchRight", TranslitDictionary.Side.RIGHT);
+        out.println("}");
+        out.flush();
+    }
+
+    private void writeValues(PrintWriter out, String name, TranslitDictionary.Side side) {
+        out.println(INDENT + "private static final String[] " + name + " = {");
+        for (int i = 0; i < dictionary.getSize(); i++) {
+            out.println(INDENT + INDENT + literal(dictionary.getValueAt(i, side))
+                    + (i < dictionary.getSize() - 1 ? "," : ""));
+        }
+        out.println(INDENT + "};");
+    }
+
+    private void writeDictionaryMethods(PrintWriter out) {
+        String i1 = INDENT, i2 = INDENT + INDENT, i3 = i2 + INDENT;
+        out.println(i1 + "@Override");
+        out.println(i1 + "public int indexOf(String string, Side side) {");
+        out.println(i2 + "return side == Side.LEFT ? indexOfLeft(string) : indexOfRight(string);");
+        out.println(i1 + "}");
+        out.println();
+        writeIndexOf(out, "indexOfLeft", TranslitDictionary.Side.LEFT);
+        writeIndexOf(out, "indexOfRight", TranslitDictionary.Side.RIGHT);
+        out.println(i1 + "@Override");
+        out.println(i1 + "public String getValueAt(int idx, Side side) {");
+        out.println(i2 + "return side == Side.LEFT ? LEFT[idx] : RIGHT[idx];");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public void addPair(String left, String right) {");
+        out.println(i2 + "throw new UnsupportedOperationException(\"Generated dictionary is read-only\");");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public void removeAt(int index) {");
+        out.println(i2 + "throw new UnsupportedOperationException(\"Generated dictionary is read-only\");");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public List<String> getOppositeList(String value, Side side) {");
+        out.println(i2 + "String[] values = side == Side.LEFT ? LEFT : RIGHT;");
+        out.println(i2 + "String[] opposites = side == Side.LEFT ? RIGHT : LEFT;");
+        out.println(i2 + "List<String> toReturn = new ArrayList<String>();");
+        out.println(i2 + "for (int i = 0; i < values.length; i++) {");
+        out.println(i3 + "if (values[i].equals(value)) toReturn.add(opposites[i]);");
+        out.println(i2 + "}");
+        out.println(i2 + "return toReturn;");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public int getSize() {");
+        out.println(i2 + "return LEFT.length;");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public int getLongestWordLen(Side side) {");
+        out.println(i2 + "return side == Side.LEFT ? " + dictionary.getLongestWordLen(TranslitDictionary.Side.LEFT)
+                + " : " + dictionary.getLongestWordLen(TranslitDictionary.Side.RIGHT) + ";");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public String getDescription() {");
+        out.println(i2 + "return description;");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public void setDescription(String description) {");
+        out.println(i2 + "this.description = description;");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public String getVersion() {");
+        out.println(i2 + "return " + literal(dictionary.getVersion()) + ";");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public String getInitialParam() {");
+        out.println(i2 + "return " + literal(dictionary.getInitialParam()) + ";");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public void save(OutputStream stream) throws Exception {");
+        out.println(i2 + "throw new UnsupportedOperationException(\"Generated dictionary is read-only\");");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public void load(InputStream stream) throws Exception {");
+        out.println(i2 + "throw new UnsupportedOperationException(\"Generated dictionary is read-only\");");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public String getFilenameExtension() {");
+        out.println(i2 + "return " + literal(dictionary.getFilenameExtension()) + ";");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public String getExclusionMarker(ExclusionMarker exclusionMarker) {");
+        out.println(i2 + "switch (exclusionMarker) {");
+        out.println(i3 + "case START: return "
+                + literal(dictionary.getExclusionMarker(TranslitDictionary.ExclusionMarker.START)) + ";");
+        out.println(i3 + "case END: return "
+                + literal(dictionary.getExclusionMarker(TranslitDictionary.ExclusionMarker.END)) + ";");
+        out.println(i3 + "default: throw new RuntimeException(\"Invalid exclusionMarker \" + exclusionMarker);");
+        out.println(i2 + "}");
+        out.println(i1 + "}");
+        out.println();
+        out.println(i1 + "@Override");
+        out.println(i1 + "public TranslitMatcher getMatcher() {");
+        out.println(i2 + "return matcher;");
+        out.println(i1 + "}");
+        out.println();
+    }
+
+    private void writeIndexOf(PrintWriter out, String method, TranslitDictionary.Side side) {
+        String i2 = INDENT + INDENT, i3 = i2 + INDENT;
+        Map<String, Integer> first = new TreeMap<String, Integer>();
+        for (int i = 0; i < dictionary.getSize(); i++) {
+            String value = dictionary.getValueAt(i, side);
+            if (!first.containsKey(value)) first.put(value, i);
+        }
+        out.println(INDENT + "private static int " + method + "(String string) {");
+        out.println(i2 + "switch (string) {");
+        for (Map.Entry<String, Integer> entry : first.entrySet()) {
+            out.println(i3 + "case " + literal(entry.getKey()) + ": return " + entry.getValue() + ";");
+        }
+        out.println(i3 + "default: return -1;");
+        out.println(i2 + "}");
+        out.println(INDENT + "}");
+        out.println();
+    }
+
+    private void writeMatchMethods(PrintWriter out) {
+        String i2 = INDENT + INDENT;
+        String i3 = i2 + INDENT;
+        out.println(INDENT + "private class Matcher implements TranslitMatcher {");
+        out.println();
+        out.println(i2 + "@Override");
+        out.println(i2 + "public int match(CharSequence text, int position, Side side) {");
+        out.println(i3 + "return side == Side.LEFT ? matchLeft(text, position) : matchRight(text, position);");
+        out.println(i2 + "}");
+        out.println();
+        out.println(i2 + "@Override");
+        out.println(i2 + "public TranslitDictionary getDictionary() {");
+        out.println(i3 + "return " + simpleName + ".this;");
+        out.println(i2 + "}");
+        out.println(INDENT + "}");
+        out.println();
+        writeMatch(out, "matchLeft", TranslitDictionary.Side.LEFT);
+        writeMatch(out, "matchRight", TranslitDictionary.Side.RIGHT);
+    }
+
+    /**
+     * Writes the match method of the specified {@see side}. The first char is switched in the method, the rest of
+     * every word tree is moved to a method of its own to keep the methods small.
+     */
+    private void writeMatch(PrintWriter out, String method, TranslitDictionary.Side side) {
+        Node root = buildTree(side);
+        String i2 = INDENT + INDENT, i3 = i2 + INDENT;
+        out.println(INDENT + "private static int " + method + "(CharSequence text, int position) {");
+        out.println(i2 + "switch (text.charAt(position)) {");
+        for (Map.Entry<Character, Node> entry : root.children.entrySet()) {
+            Node node = entry.getValue();
+            String label = hex(entry.getKey());
+            if (node.children.isEmpty()) {
+                out.println(i3 + "case " + label + ": return " + node.value + ";");
+            } else {
+                out.println(i3 + "case " + label + ": return " + subMethod(method, entry.getKey()) + "(text, position + 1);");
+            }
+        }
+        out.println(i3 + "default: return -1;");
+        out.println(i2 + "}");
+        out.println(INDENT + "}");
+        out.println();
+        for (Map.Entry<Character, Node> entry : root.children.entrySet()) {
+            Node node = entry.getValue();
+            if (node.children.isEmpty()) continue;
+            out.println(INDENT + "private static int " + subMethod(method, entry.getKey()) + "(CharSequence text, int position) {");
+            out.println(i2 + "int result = " + node.value + ";");
+            writeSwitch(out, node, 0, i2);
+            out.println(i2 + "return result;");
+            out.println(INDENT + "}");
+            out.println();
+        }
+    }
+
+    /**
+     * Writes the switch over the children of the specified {@see node}. The <code>result</code> keeps the value of
+     * the deepest word passed, so the longest word wins.
+     */
+    private void writeSwitch(PrintWriter out, Node node, int depth, String indent) {
+        String offset = depth == 0 ? "position" : "position + " + depth;
+        String i1 = indent + INDENT, i2 = i1 + INDENT;
+        out.println(indent + "if (" + offset + " < text.length()) {");
+        out.println(i1 + "switch (text.charAt(" + offset + ")) {");
+        for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+            Node child = entry.getValue();
+            out.println(i2 + "case " + hex(entry.getKey()) + ":");
+            if (child.value >= 0) out.println(i2 + INDENT + "result = " + child.value + ";");
+            if (!child.children.isEmpty()) writeSwitch(out, child, depth + 1, i2 + INDENT);
+            out.println(i2 + INDENT + "break;");
+        }
+        out.println(i1 + "}");
+        out.println(indent + "}");
+    }
+
+    private Node buildTree(TranslitDictionary.Side side) {
+        Node root = new Node();
+        for (int i = 0; i < dictionary.getSize(); i++) {
+            String word = dictionary.getValueAt(i, side);
+            if (word.isEmpty()) continue;
+            Node node = root;
+            for (int j = 0; j < word.length(); j++) {
+                Node child = node.children.get(word.charAt(j));
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(word.charAt(j), child);
+                }
+                node = child;
+            }
+            if (node.value < 0) node.value = i;
+        }
+        return root;
+    }
+
+    private static String subMethod(String method, char ch) {
+        return method + String.format("_%04X", (int) ch);
+    }
+
+    private static String hex(char ch) {
+        return String.format("0x%04X", (int) ch);
+    }
+
+    /**
+     * Returns Java literal of the specified value. Unicode escapes are not used for the line terminators, the quote
+     * and the backslash, they would be translated before the literal is parsed.
+     */
+    private static String literal(String value) {
+        if (value == null) return "null";
+        StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"': builder.append("\\\""); break;
+                case '\\': builder.append("\\\\"); break;
+                case '\n': builder.append("\\n"); break;
+                case '\r': builder.append("\\r"); break;
+                case '\t': builder.append("\\t"); break;
+                default:
+                    if (ch < 0x20 || ch > 0x7E) {
+                        builder.append(String.format("\\u%04X", (int) ch));
+                    } else {
+                        builder.append(ch);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static String javadoc(String value) {
+        if (value == null) return "a dictionary";
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            builder.append(ch < 0x20 || ch > 0x7E || ch == '*' || ch == '\\' ? '_' : ch);
+        }
+        return builder.toString();
+    }
+
+    private static class Node {
+        private int value = -1;
+        private final Map<Character, Node> children = new TreeMap<Character, Node>();
+    }
+}
@@ -0,0 +1,109 @@
+package org.romppu.translit.dictionary;
+
+import java.text.MessageFormat;
+
+/**
+ * Condition on the character which precedes or follows a dictionary word in the text, see
+ * {@link ContextTranslitDictionary}. The condition is written as
+ * <ul>
+ * <li><code>boundary</code> - the word is at the beginning or at the end of the text or the character is not a letter
+ * or a digit</li>
+ * <li><code>letter</code> - the character is a letter</li>
+ * <li><code>[chars]</code> - the character is one of the listed characters</li>
+ * <li><code>[^chars]</code> - the character is none of the listed characters or there is no character</li>
+ * </ul>
+ * The conditions are immutable, conditions with the same source are equal.
+ */
+public final class CharCondition {
+
+    public static final String BOUNDARY = "boundary";
+    public static final String LETTER = "letter";
+
+    public static final CharCondition WORD_BOUNDARY = new CharCondition(BOUNDARY, Kind.BOUNDARY, null);
+    public static final CharCondition ANY_LETTER = new CharCondition(LETTER, Kind.LETTER, null);
+
+    private static final String ERR_INVALID_CONDITION = "Invalid condition \"{0}\", boundary, letter, [chars] or [^chars] is expected";
+
+    private enum Kind {
+        BOUNDARY, LETTER, SET, NOT_SET
+    }
+
+    private final String source;
+    private final Kind kind;
+    private final String chars;
+
+    private CharCondition(String source, Kind kind, String chars) {
+        this.source = source;
+        this.kind = kind;
+        this.chars = chars;
+    }
+
+    /**
+     * Parses the specified condition
+     *
+     * @param source condition
+     * @return parsed condition or null if the source is null or empty
+     * @throws IllegalArgumentException if the source is not a valid condition
+     */
+    public static CharCondition parse(String source) {
+        if (source == null || source.trim().isEmpty()) return null;
+        String condition = source.trim();
+        if (BOUNDARY.equals(condition)) return WORD_BOUNDARY;
+        if (LETTER.equals(condition)) return ANY_LETTER;
+        if (condition.length() > 2 && condition.startsWith("[") && condition.endsWith("]")) {
+            if (condition.charAt(1) == '^') {
+                if (condition.length() > 3) {
+                    return new CharCondition(condition, Kind.NOT_SET, condition.substring(2, condition.length() - 1));
+                }
+            } else {
+                return new CharCondition(condition, Kind.SET, condition.substring(1, condition.length() - 1));
+            }
+        }
+        throw new IllegalArgumentException(MessageFormat.format(ERR_INVALID_CONDITION, source));
+    }
+
+    /**
+     * Checks the character at the specified index of the text
+     *
+     * @param text  text
+     * @param index index of the character, an index outside of the text means that there is no character
+     * @return true if the condition holds
+     */
+    public boolean accepts(CharSequence text, int index) {
+        return accepts(index < 0 || index >= text.length() ? -1 : text.charAt(index));
+    }
+
+    /**
+     * Checks the specified character
+     *
+     * @param ch character or -1 if there is no character
+     * @return true if the condition holds
+     */
+    public boolean accepts(int ch) {
+        switch (kind) {
+            case BOUNDARY: return ch < 0 || !Character.isLetterOrDigit((char) ch);
+            case LETTER: return ch >= 0 && Character.isLetter((char) ch);
+            case SET: return ch >= 0 && chars.indexOf(ch) >= 0;
+            case NOT_SET: return ch < 0 || chars.indexOf(ch) < 0;
+            default: throw new IllegalStateException(kind.toString());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof CharCondition && source.equals(((CharCondition) o).source));
+    }
+
+    @Override
+    public int hashCode() {
+        return source.hashCode();
+    }
+
+    /**
+     * Returns the source of the condition
+     */
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,43 @@
+package org.romppu.translit.dictionary;
+
+/**
+ * The ContextTranslitDictionary is a {@link TranslitDictionary} whose pairs may have conditions on the characters
+ * around the word, e.g. <code>&#1077;</code> is transliterated to <code>ye</code> at the beginning of a word only.
+ * The conditions hold for both sides: a word of either side is matched only if the character which precedes it and
+ * the character which follows it satisfy the conditions of its pair.
+ * If the text contains the same word several times the first pair whose conditions hold is used, so the pairs
+ * with conditions must precede the pair of the same word without conditions.
+ */
+public interface ContextTranslitDictionary extends TranslitDictionary {
+
+    public enum Context {
+        BEFORE,
+        AFTER;
+    }
+
+    /**
+     * Returns the condition of the pair at the specified index
+     *
+     * @param idx     pair index
+     * @param context BEFORE for the preceding character or AFTER for the following one
+     * @return condition or null if any character is allowed
+     */
+    public CharCondition getCondition(int idx, Context context);
+
+    /**
+     * Adds new pair with the specified conditions to the dictionary
+     *
+     * @param left   left value
+     * @param right  right value
+     * @param before condition of the preceding character or null
+     * @param after  condition of the following character or null
+     */
+    public void addPair(String left, String right, CharCondition before, CharCondition after);
+
+    /**
+     * Indicates that at least one pair has a condition
+     *
+     * @return true if the dictionary has conditions
+     */
+    public boolean hasConditions();
+}
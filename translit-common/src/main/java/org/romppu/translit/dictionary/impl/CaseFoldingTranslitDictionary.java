@@ -0,0 +1,259 @@
+package org.romppu.translit.dictionary.impl;
+
+import org.romppu.translit.dictionary.ContextTranslitDictionary;
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.engine.TranslitMatcher;
+import org.romppu.translit.engine.impl.CaseFoldingTranslitMatcher;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Read-only dictionary which keeps a pair and its upper case copy as one lower case pair.
+ * A lower case pair is folded if the source dictionary contains the same pair in upper case, e.g.
+ * <code>ch</code> and <code>CH</code>. The upper case pair and the title case pair (e.g. <code>Ch</code>), if present,
+ * are dropped from the folded dictionary, both of them are derived from the lower case pair. The other pairs are kept
+ * as they are.
+ * The pair number <code>k</code> has three indexes, see {@link CaseFoldingTranslitMatcher}, so
+ * {@link #getSize()} is three times the amount of the kept pairs. The index of the lower case variant is the lowest
+ * one, the title case variant of a word of one character is the same as the upper case one.
+ * The case variants of the source dictionary are expected in the same order as the lower case pairs.
+ * The conditions of a {@link ContextTranslitDictionary} are not supported.
+ */
+public class CaseFoldingTranslitDictionary implements TranslitDictionary, TranslitMatcher.Provider {
+
+    private static final String ERR_READ_ONLY = "Case folding dictionary is read-only";
+    private static final String ERR_CONDITIONS = "Dictionary with conditions cannot be folded";
+
+    private final String[] left;
+    private final String[] right;
+    private final boolean[] folded;
+    private final Map<String, int[]> lowerIndexes = new HashMap<String, int[]>();
+    private final int[] longestWordLen = new int[Side.values().length];
+    private final CaseFoldingTranslitMatcher matcher;
+    private final String version;
+    private final String initialParam;
+    private final String filenameExtension;
+    private final String exclusionMarkerStart;
+    private final String exclusionMarkerEnd;
+    private String description;
+
+    /**
+     * Folds the pairs of the specified {@see dictionary}
+     *
+     * @param dictionary source dictionary
+     */
+    public CaseFoldingTranslitDictionary(TranslitDictionary dictionary) {
+        if (dictionary instanceof ContextTranslitDictionary && ((ContextTranslitDictionary) dictionary).hasConditions()) {
+            throw new IllegalArgumentException(ERR_CONDITIONS);
+        }
+        int size = dictionary.getSize();
+        boolean[] consumed = new boolean[size];
+        List<String> leftList = new ArrayList<String>();
+        List<String> rightList = new ArrayList<String>();
+        List<Boolean> foldedList = new ArrayList<Boolean>();
+        for (int i = 0; i < size; i++) {
+            if (consumed[i]) continue;
+            String l = dictionary.getValueAt(i, Side.LEFT);
+            String r = dictionary.getValueAt(i, Side.RIGHT);
+            boolean foldable = isFoldable(l, r);
+            if (foldable) {
+                int upper = find(dictionary, consumed, i + 1,
+                        CaseFoldingTranslitMatcher.toUpperCase(l), CaseFoldingTranslitMatcher.toUpperCase(r));
+                foldable = upper >= 0;
+                if (foldable) {
+                    consumed[upper] = true;
+                    String titleLeft = CaseFoldingTranslitMatcher.toTitleCase(l);
+                    String titleRight = CaseFoldingTranslitMatcher.toTitleCase(r);
+                    int title = titleLeft.equals(dictionary.getValueAt(upper, Side.LEFT))
+                            && titleRight.equals(dictionary.getValueAt(upper, Side.RIGHT))
+                            ? -1 : find(dictionary, consumed, i + 1, titleLeft, titleRight);
+                    if (title >= 0) consumed[title] = true;
+                }
+            }
+            leftList.add(l);
+            rightList.add(r);
+            foldedList.add(foldable);
+        }
+        left = leftList.toArray(new String[leftList.size()]);
+        right = rightList.toArray(new String[rightList.size()]);
+        folded = new boolean[left.length];
+        for (int k = 0; k < folded.length; k++) {
+            folded[k] = foldedList.get(k);
+            longestWordLen[Side.LEFT.ordinal()] = Math.max(longestWordLen[Side.LEFT.ordinal()], left[k].length());
+            longestWordLen[Side.RIGHT.ordinal()] = Math.max(longestWordLen[Side.RIGHT.ordinal()], right[k].length());
+        }
+        for (Side side : Side.values()) {
+            String[] words = side == Side.LEFT ? left : right;
+            for (int k = 0; k < words.length; k++) {
+                String key = side.name() + CaseFoldingTranslitMatcher.toLowerCase(words[k]);
+                int[] group = lowerIndexes.get(key);
+                if (group == null) {
+                    lowerIndexes.put(key, new int[]{k});
+                } else {
+                    int[] extended = Arrays.copyOf(group, group.length + 1);
+                    extended[group.length] = k;
+                    lowerIndexes.put(key, extended);
+                }
+            }
+        }
+        description = dictionary.getDescription();
+        version = dictionary.getVersion();
+        initialParam = dictionary.getInitialParam();
+        filenameExtension = dictionary.getFilenameExtension();
+        exclusionMarkerStart = dictionary.getExclusionMarker(ExclusionMarker.START);
+        exclusionMarkerEnd = dictionary.getExclusionMarker(ExclusionMarker.END);
+        matcher = new CaseFoldingTranslitMatcher(this, new String[][]{left, right}, folded);
+    }
+
+    /**
+     * Returns amount of the kept pairs, the case variants are not counted
+     *
+     * @return amount of pairs
+     */
+    public int getPairCount() {
+        return left.length;
+    }
+
+    /**
+     * Indicates that the case variants of the pair number {@see k} are derived
+     *
+     * @param k pair number, the index divided by {@link CaseFoldingTranslitMatcher#VARIANTS}
+     * @return true if the pair is folded
+     */
+    public boolean isFolded(int k) {
+        return folded[k];
+    }
+
+    @Override
+    public TranslitMatcher getMatcher() {
+        return matcher;
+    }
+
+    @Override
+    public int indexOf(String string, Side side) {
+        int[] group = lowerIndexes.get(side.name() + CaseFoldingTranslitMatcher.toLowerCase(string));
+        if (group == null) return -1;
+        for (int k : group) {
+            for (int variant = 0; variant < CaseFoldingTranslitMatcher.VARIANTS; variant++) {
+                int idx = k * CaseFoldingTranslitMatcher.VARIANTS + variant;
+                if (getValueAt(idx, side).equals(string)) return idx;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String getValueAt(int idx, Side side) {
+        int k = idx / CaseFoldingTranslitMatcher.VARIANTS;
+        String value = side == Side.LEFT ? left[k] : right[k];
+        if (!folded[k]) return value;
+        switch (idx % CaseFoldingTranslitMatcher.VARIANTS) {
+            case CaseFoldingTranslitMatcher.UPPER: return CaseFoldingTranslitMatcher.toUpperCase(value);
+            case CaseFoldingTranslitMatcher.TITLE: return CaseFoldingTranslitMatcher.toTitleCase(value);
+            default: return value;
+        }
+    }
+
+    @Override
+    public void addPair(String left, String right) {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public void removeAt(int index) {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public List<String> getOppositeList(String value, Side side) {
+        ArrayList<String> toReturn = new ArrayList<String>();
+        for (int i = 0; i < getSize(); i++) {
+            if (value.equals(getValueAt(i, side))) {
+                String opposite = getValueAt(i, side.invert());
+                if (!toReturn.contains(opposite)) toReturn.add(opposite);
+            }
+        }
+        return toReturn;
+    }
+
+    @Override
+    public int getSize() {
+        return left.length * CaseFoldingTranslitMatcher.VARIANTS;
+    }
+
+    @Override
+    public int getLongestWordLen(Side side) {
+        return longestWordLen[side.ordinal()];
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    @Override
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public String getInitialParam() {
+        return initialParam;
+    }
+
+    @Override
+    public void save(OutputStream stream) throws Exception {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public void load(InputStream stream) throws Exception {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public String getFilenameExtension() {
+        return filenameExtension;
+    }
+
+    @Override
+    public String getExclusionMarker(ExclusionMarker exclusionMarker) {
+        switch (exclusionMarker) {
+            case START: return exclusionMarkerStart;
+            case END: return exclusionMarkerEnd;
+            default: throw new RuntimeException("Invalid exclusionMarker " + exclusionMarker);
+        }
+    }
+
+    /**
+     * A pair is foldable if it is in lower case, has a letter with another upper case and its case is restored
+     * char by char
+     */
+    private static boolean isFoldable(String left, String right) {
+        String upperLeft = CaseFoldingTranslitMatcher.toUpperCase(left);
+        String upperRight = CaseFoldingTranslitMatcher.toUpperCase(right);
+        return !left.isEmpty() && !right.isEmpty()
+                && left.equals(CaseFoldingTranslitMatcher.toLowerCase(left))
+                && right.equals(CaseFoldingTranslitMatcher.toLowerCase(right))
+                && left.equals(CaseFoldingTranslitMatcher.toLowerCase(upperLeft))
+                && right.equals(CaseFoldingTranslitMatcher.toLowerCase(upperRight))
+                && (!left.equals(upperLeft) || !right.equals(upperRight));
+    }
+
+    private static int find(TranslitDictionary dictionary, boolean[] consumed, int from, String left, String right) {
+        for (int i = from; i < dictionary.getSize(); i++) {
+            if (!consumed[i] && left.equals(dictionary.getValueAt(i, Side.LEFT))
+                    && right.equals(dictionary.getValueAt(i, Side.RIGHT))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,242 @@
+package org.romppu.translit.dictionary.impl;
+
+import org.romppu.translit.dictionary.CharCondition;
+import org.romppu.translit.dictionary.ContextTranslitDictionary;
+import org.romppu.translit.dictionary.TranslitDictionary;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Read-only copy of a {@link TranslitDictionary} which may be shared by many users.
+ * The values are kept in two arrays, strings equal to the strings of other dictionaries may be replaced by the same
+ * instance through a pool passed to the constructor.
+ * The conditions of the pairs of a {@link ContextTranslitDictionary} are copied too.
+ * Two immutable dictionaries are equal if they contain the same pairs with the same conditions in the same order,
+ * the same exclusion markers and the same version, the description is not compared.
+ */
+public class ImmutableTranslitDictionary implements ContextTranslitDictionary {
+
+    private static final String ERR_READ_ONLY = "Dictionary is read-only";
+
+    private final String[] left;
+    private final String[] right;
+    private final CharCondition[] before;
+    private final CharCondition[] after;
+    private final List<Map<String, Integer>> indexes = new ArrayList<Map<String, Integer>>();
+    private final int[] longestWordLen = new int[Side.values().length];
+    private final String description;
+    private final String version;
+    private final String initialParam;
+    private final String filenameExtension;
+    private final String exclusionMarkerStart;
+    private final String exclusionMarkerEnd;
+    private final int hashCode;
+
+    /**
+     * Copies the specified {@see dictionary}
+     *
+     * @param dictionary source dictionary
+     */
+    public ImmutableTranslitDictionary(TranslitDictionary dictionary) {
+        this(dictionary, null);
+    }
+
+    /**
+     * Copies the specified {@see dictionary}, the strings are taken from the specified {@see pool} when it already
+     * contains them, otherwise they are added to the pool
+     *
+     * @param dictionary source dictionary
+     * @param pool       string pool or null
+     */
+    public ImmutableTranslitDictionary(TranslitDictionary dictionary, Map<String, String> pool) {
+        int size = dictionary.getSize();
+        left = new String[size];
+        right = new String[size];
+        for (int i = 0; i < size; i++) {
+            left[i] = intern(dictionary.getValueAt(i, Side.LEFT), pool);
+            right[i] = intern(dictionary.getValueAt(i, Side.RIGHT), pool);
+        }
+        if (dictionary instanceof ContextTranslitDictionary && ((ContextTranslitDictionary) dictionary).hasConditions()) {
+            ContextTranslitDictionary source = (ContextTranslitDictionary) dictionary;
+            before = new CharCondition[size];
+            after = new CharCondition[size];
+            for (int i = 0; i < size; i++) {
+                before[i] = source.getCondition(i, Context.BEFORE);
+                after[i] = source.getCondition(i, Context.AFTER);
+            }
+        } else {
+            before = null;
+            after = null;
+        }
+        for (Side side : Side.values()) {
+            String[] values = side == Side.LEFT ? left : right;
+            Map<String, Integer> map = new HashMap<String, Integer>(size * 2);
+            for (int i = size - 1; i >= 0; i--) {
+                map.put(values[i], i);
+                longestWordLen[side.ordinal()] = Math.max(longestWordLen[side.ordinal()], values[i].length());
+            }
+            indexes.add(side.ordinal(), map);
+        }
+        description = dictionary.getDescription();
+        version = dictionary.getVersion();
+        initialParam = dictionary.getInitialParam();
+        filenameExtension = dictionary.getFilenameExtension();
+        exclusionMarkerStart = intern(dictionary.getExclusionMarker(ExclusionMarker.START), pool);
+        exclusionMarkerEnd = intern(dictionary.getExclusionMarker(ExclusionMarker.END), pool);
+        int hash = Arrays.hashCode(left);
+        hash = 31 * hash + Arrays.hashCode(right);
+        hash = 31 * hash + Arrays.hashCode(before);
+        hash = 31 * hash + Arrays.hashCode(after);
+        hash = 31 * hash + Arrays.hashCode(new Object[]{version, exclusionMarkerStart, exclusionMarkerEnd});
+        hashCode = hash;
+    }
+
+    /**
+     * Returns amount of chars of all values
+     *
+     * @return amount of chars
+     */
+    public long getCharCount() {
+        long count = 0;
+        for (int i = 0; i < left.length; i++) {
+            count += left[i].length() + right[i].length();
+        }
+        return count;
+    }
+
+    @Override
+    public int indexOf(String string, Side side) {
+        Integer idx = indexes.get(side.ordinal()).get(string);
+        return idx == null ? -1 : idx;
+    }
+
+    @Override
+    public String getValueAt(int idx, Side side) {
+        return side == Side.LEFT ? left[idx] : right[idx];
+    }
+
+    @Override
+    public void addPair(String left, String right) {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public void addPair(String left, String right, CharCondition before, CharCondition after) {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public CharCondition getCondition(int idx, Context context) {
+        CharCondition[] conditions = context == Context.BEFORE ? before : after;
+        return conditions == null ? null : conditions[idx];
+    }
+
+    @Override
+    public boolean hasConditions() {
+        return before != null;
+    }
+
+    @Override
+    public void removeAt(int index) {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public List<String> getOppositeList(String value, Side side) {
+        String[] values = side == Side.LEFT ? left : right;
+        String[] opposites = side == Side.LEFT ? right : left;
+        ArrayList<String> toReturn = new ArrayList<String>();
+        for (int i = 0; i < values.length; i++) {
+            if (value.equals(values[i])) toReturn.add(opposites[i]);
+        }
+        return toReturn;
+    }
+
+    @Override
+    public int getSize() {
+        return left.length;
+    }
+
+    @Override
+    public int getLongestWordLen(Side side) {
+        return longestWordLen[side.ordinal()];
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public void setDescription(String description) {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public String getInitialParam() {
+        return initialParam;
+    }
+
+    @Override
+    public void save(OutputStream stream) throws Exception {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public void load(InputStream stream) throws Exception {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public String getFilenameExtension() {
+        return filenameExtension;
+    }
+
+    @Override
+    public String getExclusionMarker(ExclusionMarker exclusionMarker) {
+        switch (exclusionMarker) {
+            case START: return exclusionMarkerStart;
+            case END: return exclusionMarkerEnd;
+            default: throw new RuntimeException("Invalid exclusionMarker " + exclusionMarker);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ImmutableTranslitDictionary)) return false;
+        ImmutableTranslitDictionary that = (ImmutableTranslitDictionary) o;
+        return hashCode == that.hashCode
+                && Arrays.equals(left, that.left)
+                && Arrays.equals(right, that.right)
+                && Arrays.equals(before, that.before)
+                && Arrays.equals(after, that.after)
+                && equal(version, that.version)
+                && equal(exclusionMarkerStart, that.exclusionMarkerStart)
+                && equal(exclusionMarkerEnd, that.exclusionMarkerEnd);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static String intern(String value, Map<String, String> pool) {
+        if (value == null || pool == null) return value;
+        String pooled = pool.get(value);
+        if (pooled != null) return pooled;
+        pool.put(value, value);
+        return value;
+    }
+}
@@ -0,0 +1,202 @@
+package org.romppu.translit.dictionary.impl;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.engine.TranslitMatcher;
+import org.romppu.translit.engine.impl.LayeredTranslitMatcher;
+import org.romppu.translit.engine.impl.TrieTranslitMatcher;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Dictionary which stacks override layers over a base dictionary.
+ * A pair of a layer replaces the pairs of the base and of the lower layers with the same left value, the other pairs
+ * of the lower layers stay. The indexes of the base pairs are kept, the pairs of the layers follow them, the top
+ * layer first, so the top layer wins when the same word is found in several layers.
+ * The dictionary is its own {@link TranslitMatcher.Provider}: the base is compiled once and its
+ * {@link TrieTranslitMatcher} may be shared by any amount of layered dictionaries, the layers are compiled into
+ * one overlay of the base, see {@link LayeredTranslitMatcher}.
+ * The dictionary is read-only, later changes of the base and the layers are not visible. The conditions of
+ * a {@link org.romppu.translit.dictionary.ContextTranslitDictionary} are not supported.
+ */
+public class LayeredTranslitDictionary implements TranslitDictionary, TranslitMatcher.Provider {
+
+    private static final String ERR_READ_ONLY = "Layered dictionary is read-only, change its layers instead";
+
+    private final TranslitDictionary base;
+    private final List<TranslitDictionary> layers;
+    private final int baseSize;
+    private final List<String> left = new ArrayList<String>();
+    private final List<String> right = new ArrayList<String>();
+    private final BitSet hidden = new BitSet();
+    private final List<Map<String, Integer>> layerIndexes = new ArrayList<Map<String, Integer>>();
+    private final int[] longestWordLen = new int[Side.values().length];
+    private final LayeredTranslitMatcher matcher;
+    private String description;
+
+    /**
+     * Stacks the specified {@see layers} over the specified {@see base} dictionary
+     *
+     * @param base   base dictionary
+     * @param layers override layers, the last one is the top layer
+     */
+    public LayeredTranslitDictionary(TranslitDictionary base, TranslitDictionary... layers) {
+        this(new TrieTranslitMatcher(base), Arrays.asList(layers));
+    }
+
+    /**
+     * Stacks the specified {@see layers} over the dictionary of the specified compiled {@see base}, the compiled
+     * base is shared
+     *
+     * @param base   compiled base dictionary
+     * @param layers override layers, the last one is the top layer
+     */
+    public LayeredTranslitDictionary(TrieTranslitMatcher base, List<TranslitDictionary> layers) {
+        this.base = base.getDictionary();
+        this.layers = Collections.unmodifiableList(new ArrayList<TranslitDictionary>(layers));
+        this.baseSize = this.base.getSize();
+        this.description = this.base.getDescription();
+        Set<String> overridden = new HashSet<String>();
+        for (int l = layers.size() - 1; l >= 0; l--) {
+            TranslitDictionary layer = layers.get(l);
+            Set<String> layerLeft = new HashSet<String>();
+            for (int i = 0; i < layer.getSize(); i++) {
+                String leftValue = layer.getValueAt(i, Side.LEFT);
+                if (overridden.contains(leftValue)) continue;
+                layerLeft.add(leftValue);
+                left.add(leftValue);
+                right.add(layer.getValueAt(i, Side.RIGHT));
+            }
+            overridden.addAll(layerLeft);
+        }
+        for (Side side : Side.values()) {
+            Map<String, Integer> indexes = new HashMap<String, Integer>();
+            for (int i = left.size() - 1; i >= 0; i--) {
+                indexes.put(getValueAt(baseSize + i, side), baseSize + i);
+            }
+            layerIndexes.add(side.ordinal(), indexes);
+        }
+        for (int idx = 0; idx < baseSize; idx++) {
+            if (overridden.contains(this.base.getValueAt(idx, Side.LEFT))) hidden.set(idx);
+            for (Side side : Side.values()) {
+                longestWordLen[side.ordinal()] = Math.max(longestWordLen[side.ordinal()], getValueAt(idx, side).length());
+            }
+        }
+        for (int i = 0; i < left.size(); i++) {
+            longestWordLen[Side.LEFT.ordinal()] = Math.max(longestWordLen[Side.LEFT.ordinal()], left.get(i).length());
+            longestWordLen[Side.RIGHT.ordinal()] = Math.max(longestWordLen[Side.RIGHT.ordinal()], right.get(i).length());
+        }
+        matcher = new LayeredTranslitMatcher(this, base, hidden);
+    }
+
+    public TranslitDictionary getBase() {
+        return base;
+    }
+
+    public List<TranslitDictionary> getLayers() {
+        return layers;
+    }
+
+    /**
+     * Indicates that the pair at the specified index is replaced by a pair of a layer and is never matched
+     *
+     * @param idx pair index
+     * @return true if the pair is hidden
+     */
+    public boolean isHidden(int idx) {
+        return hidden.get(idx);
+    }
+
+    @Override
+    public TranslitMatcher getMatcher() {
+        return matcher;
+    }
+
+    @Override
+    public int indexOf(String string, Side side) {
+        Integer idx = layerIndexes.get(side.ordinal()).get(string);
+        if (idx != null) return idx;
+        int baseIdx = base.indexOf(string, side);
+        if (baseIdx < 0 || !hidden.get(baseIdx)) return baseIdx;
+        for (int i = baseIdx + 1; i < baseSize; i++) {
+            if (!hidden.get(i) && string.equals(base.getValueAt(i, side))) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public String getValueAt(int idx, Side side) {
+        if (idx < baseSize) return base.getValueAt(idx, side);
+        return side == Side.LEFT ? left.get(idx - baseSize) : right.get(idx - baseSize);
+    }
+
+    @Override
+    public void addPair(String left, String right) {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public void removeAt(int index) {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public List<String> getOppositeList(String value, Side side) {
+        ArrayList<String> toReturn = new ArrayList<String>();
+        for (int i = 0; i < getSize(); i++) {
+            if (!hidden.get(i) && value.equals(getValueAt(i, side))) toReturn.add(getValueAt(i, side.invert()));
+        }
+        return toReturn;
+    }
+
+    @Override
+    public int getSize() {
+        return baseSize + left.size();
+    }
+
+    @Override
+    public int getLongestWordLen(Side side) {
+        return longestWordLen[side.ordinal()];
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    @Override
+    public String getVersion() {
+        return base.getVersion();
+    }
+
+    @Override
+    public String getInitialParam() {
+        return base.getInitialParam();
+    }
+
+    @Override
+    public void save(OutputStream stream) throws Exception {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public void load(InputStream stream) throws Exception {
+        throw new UnsupportedOperationException(ERR_READ_ONLY);
+    }
+
+    @Override
+    public String getFilenameExtension() {
+        return base.getFilenameExtension();
+    }
+
+    @Override
+    public String getExclusionMarker(ExclusionMarker exclusionMarker) {
+        return base.getExclusionMarker(exclusionMarker);
+    }
+}
@@ -0,0 +1,412 @@
+package org.romppu.translit.dictionary.impl;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.*;
+
+/**
+ * Implementation of {@link TranslitDictionary} which deals with a plain text file of <code>left = right</code> lines,
+ * the format of <code>cyrillic_default.properties</code>.
+ * <ul>
+ * <li>the file is UTF-8 text, one pair per line, the left and the right values are trimmed</li>
+ * <li>empty lines and lines starting with <code>#</code> or <code>!</code> are ignored</li>
+ * <li><code>\=</code>, <code>\#</code>, <code>\!</code>, <code>\ </code>, <code>\\</code> and <code>&#92;uXXXX</code>
+ * escapes are supported</li>
+ * <li>lines starting with <code>@</code> are attributes of the dictionary: <code>@name</code>, <code>@version</code>,
+ * <code>@exclusionMarkerStart</code>, <code>@exclusionMarkerEnd</code>, <code>@leftDescription</code>,
+ * <code>@rightDescription</code></li>
+ * </ul>
+ * The file is parsed by a hand-written line parser straight into the lookup tables, only the values themselves
+ * are allocated.
+ */
+public class TextTranslitDictionary implements TranslitDictionary {
+
+    public static final String FILENAME_EXTENSION = ".properties";
+    public static final String ATTR_NAME = "@name";
+    public static final String ATTR_VERSION = "@version";
+    public static final String ATTR_EXCLUSION_MARKER_START = "@exclusionMarkerStart";
+    public static final String ATTR_EXCLUSION_MARKER_END = "@exclusionMarkerEnd";
+    public static final String ATTR_LEFT_DESCRIPTION = "@leftDescription";
+    public static final String ATTR_RIGHT_DESCRIPTION = "@rightDescription";
+
+    private static final String ERR_NO_SEPARATOR = "Line {0}: ''='' is expected";
+    private static final String ERR_EMPTY_VALUE = "Line {0}: the left and the right values must not be empty";
+    private static final String ERR_INVALID_ESCAPE = "Line {0}: invalid escape sequence";
+    private static final String ERR_UNKNOWN_ATTRIBUTE = "Line {0}: unknown attribute {1}";
+    private static final String DEFAULT_VERSION = "2.1";
+    private static final String DEFAULT_EXCLUSION_MARKER_START = "[";
+    private static final String DEFAULT_EXCLUSION_MARKER_END = "]";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8192;
+
+    private String documentPath;
+    private String name;
+    private String version = DEFAULT_VERSION;
+    private String exclusionMarkerStart = DEFAULT_EXCLUSION_MARKER_START;
+    private String exclusionMarkerEnd = DEFAULT_EXCLUSION_MARKER_END;
+    private String leftDescription;
+    private String rightDescription;
+    private final List<String> left = new ArrayList<String>();
+    private final List<String> right = new ArrayList<String>();
+    private final Map<String, Integer> leftIndex = new HashMap<String, Integer>();
+    private final Map<String, Integer> rightIndex = new HashMap<String, Integer>();
+    private int longestLeft;
+    private int longestRight;
+
+    public TextTranslitDictionary() {
+    }
+
+    /**
+     * Constructs new instance of TextTranslitDictionary with the specified {@see documentPath} and
+     * invokes {@link #load()}
+     *
+     * @param documentPath class path resource or file path
+     * @throws Exception
+     */
+    public TextTranslitDictionary(String documentPath) throws Exception {
+        setDocumentPath(documentPath);
+        load();
+    }
+
+    public String getDocumentPath() {
+        return documentPath;
+    }
+
+    public void setDocumentPath(String documentPath) {
+        this.documentPath = documentPath;
+    }
+
+    /**
+     * Loads dictionary data from the file
+     *
+     * @throws Exception
+     */
+    public void load() throws Exception {
+        System.out.println("Loading dictionary from " + getDocumentPath());
+        InputStream stream = getClass().getResourceAsStream(getDocumentPath());
+        if (stream == null) {
+            stream = new FileInputStream(getDocumentPath());
+        }
+        try {
+            load(stream);
+        } finally {
+            stream.close();
+        }
+        System.out.println("Dictionary version is " + getVersion() + ", done.");
+    }
+
+    /**
+     * Saves dictionary data to the file
+     *
+     * @throws Exception
+     */
+    public void save() throws Exception {
+        System.out.println("Saving dictionary " + getDocumentPath());
+        OutputStream stream = new FileOutputStream(getDocumentPath());
+        try {
+            save(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Override
+    public void load(InputStream stream) throws Exception {
+        reset();
+        if (documentPath != null) {
+            String fileName = new File(documentPath).getName();
+            name = fileName.endsWith(FILENAME_EXTENSION)
+                    ? fileName.substring(0, fileName.length() - FILENAME_EXTENSION.length()) : fileName;
+        }
+        new LineParser().parse(new InputStreamReader(stream, UTF8));
+    }
+
+    @Override
+    public void save(OutputStream stream) throws Exception {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, UTF8));
+        writeAttribute(writer, ATTR_NAME, name);
+        writeAttribute(writer, ATTR_VERSION, version);
+        writeAttribute(writer, ATTR_EXCLUSION_MARKER_START, exclusionMarkerStart);
+        writeAttribute(writer, ATTR_EXCLUSION_MARKER_END, exclusionMarkerEnd);
+        writeAttribute(writer, ATTR_LEFT_DESCRIPTION, leftDescription);
+        writeAttribute(writer, ATTR_RIGHT_DESCRIPTION, rightDescription);
+        for (int i = 0; i < left.size(); i++) {
+            writer.write(escape(left.get(i)));
+            writer.write(" = ");
+            writer.write(escape(right.get(i)));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    @Override
+    public int indexOf(String string, Side side) {
+        Integer idx = (side == Side.LEFT ? leftIndex : rightIndex).get(string);
+        return idx == null ? -1 : idx;
+    }
+
+    @Override
+    public String getValueAt(int idx, Side side) {
+        return side == Side.LEFT ? left.get(idx) : right.get(idx);
+    }
+
+    @Override
+    public void addPair(String left, String right) {
+        int idx = this.left.size();
+        this.left.add(left);
+        this.right.add(right);
+        if (!leftIndex.containsKey(left)) leftIndex.put(left, idx);
+        if (!rightIndex.containsKey(right)) rightIndex.put(right, idx);
+        if (left.length() > longestLeft) longestLeft = left.length();
+        if (right.length() > longestRight) longestRight = right.length();
+    }
+
+    @Override
+    public void removeAt(int index) {
+        left.remove(index);
+        right.remove(index);
+        leftIndex.clear();
+        rightIndex.clear();
+        for (int i = left.size() - 1; i >= 0; i--) {
+            leftIndex.put(left.get(i), i);
+            rightIndex.put(right.get(i), i);
+        }
+    }
+
+    @Override
+    public List<String> getOppositeList(String value, Side side) {
+        List<String> values = side == Side.LEFT ? left : right;
+        List<String> opposites = side == Side.LEFT ? right : left;
+        ArrayList<String> toReturn = new ArrayList<String>();
+        for (int i = 0; i < values.size(); i++) {
+            if (value.equals(values.get(i))) toReturn.add(opposites.get(i));
+        }
+        return toReturn;
+    }
+
+    @Override
+    public int getSize() {
+        return left.size();
+    }
+
+    @Override
+    public int getLongestWordLen(Side side) {
+        return side == Side.LEFT ? longestLeft : longestRight;
+    }
+
+    @Override
+    public String getDescription() {
+        return name;
+    }
+
+    @Override
+    public void setDescription(String description) {
+        this.name = description;
+    }
+
+    @Override
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public String getLeftDescription() {
+        return leftDescription;
+    }
+
+    public String getRightDescription() {
+        return rightDescription;
+    }
+
+    @Override
+    public String getInitialParam() {
+        return getDocumentPath();
+    }
+
+    @Override
+    public String getFilenameExtension() {
+        return FILENAME_EXTENSION;
+    }
+
+    @Override
+    public String getExclusionMarker(ExclusionMarker exclusionMarker) {
+        switch (exclusionMarker) {
+            case START: return exclusionMarkerStart;
+            case END: return exclusionMarkerEnd;
+            default: throw new RuntimeException("Invalid exclusionMarker " + exclusionMarker);
+        }
+    }
+
+    /**
+     * Drops the pairs and resets the attributes to their defaults, nothing of the previously loaded file is kept
+     */
+    private void reset() {
+        name = null;
+        version = DEFAULT_VERSION;
+        exclusionMarkerStart = DEFAULT_EXCLUSION_MARKER_START;
+        exclusionMarkerEnd = DEFAULT_EXCLUSION_MARKER_END;
+        leftDescription = null;
+        rightDescription = null;
+        left.clear();
+        right.clear();
+        leftIndex.clear();
+        rightIndex.clear();
+        longestLeft = 0;
+        longestRight = 0;
+    }
+
+    private void setAttribute(String key, String value, int line) throws IOException {
+        if (ATTR_NAME.equals(key)) {
+            name = value;
+        } else if (ATTR_VERSION.equals(key)) {
+            version = value;
+        } else if (ATTR_EXCLUSION_MARKER_START.equals(key)) {
+            exclusionMarkerStart = value;
+        } else if (ATTR_EXCLUSION_MARKER_END.equals(key)) {
+            exclusionMarkerEnd = value;
+        } else if (ATTR_LEFT_DESCRIPTION.equals(key)) {
+            leftDescription = value;
+        } else if (ATTR_RIGHT_DESCRIPTION.equals(key)) {
+            rightDescription = value;
+        } else {
+            throw new IOException(MessageFormat.format(ERR_UNKNOWN_ATTRIBUTE, line, key));
+        }
+    }
+
+    private static void writeAttribute(Writer writer, String key, String value) throws IOException {
+        if (value == null) return;
+        writer.write(key);
+        writer.write(" = ");
+        writer.write(escape(value));
+        writer.write('\n');
+    }
+
+    private static String escape(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 4);
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            boolean edge = i == 0 || i == value.length() - 1;
+            if (ch == '\\' || ch == '=' || (i == 0 && (ch == '#' || ch == '!' || ch == '@'))
+                    || (edge && Character.isWhitespace(ch))) {
+                builder.append('\\');
+            }
+            builder.append(ch);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Parses the content char by char. The key and the value of the current line are collected into two reused
+     * builders, the trailing whitespace is cut off by remembering the length after the last significant char.
+     */
+    private class LineParser {
+
+        private final StringBuilder key = new StringBuilder();
+        private final StringBuilder value = new StringBuilder();
+        private int keyEnd;
+        private int valueEnd;
+        private boolean inValue;
+        private boolean comment;
+        private boolean attribute;
+        private boolean escape;
+        private int unicodeDigits = -1;
+        private int unicode;
+        private int line = 1;
+        private boolean carriageReturn;
+
+        void parse(Reader reader) throws IOException {
+            char[] buffer = new char[BUFFER_SIZE];
+            int len;
+            while ((len = reader.read(buffer)) != -1) {
+                for (int i = 0; i < len; i++) {
+                    char ch = buffer[i];
+                    if (ch == '\n' && carriageReturn) {
+                        // the second char of a CR LF line end
+                        carriageReturn = false;
+                    } else if (ch == '\n' || ch == '\r') {
+                        endLine();
+                        line++;
+                        carriageReturn = ch == '\r';
+                    } else {
+                        carriageReturn = false;
+                        accept(ch);
+                    }
+                }
+            }
+            endLine();
+        }
+
+        private void accept(char ch) throws IOException {
+            if (comment) return;
+            StringBuilder target = inValue ? value : key;
+            if (unicodeDigits >= 0) {
+                int digit = Character.digit(ch, 16);
+                if (digit < 0) throw new IOException(MessageFormat.format(ERR_INVALID_ESCAPE, line));
+                unicode = unicode * 16 + digit;
+                if (++unicodeDigits == 4) {
+                    unicodeDigits = -1;
+                    appendSignificant(target, (char) unicode);
+                }
+                return;
+            }
+            if (escape) {
+                escape = false;
+                if (ch == 'u') {
+                    unicodeDigits = 0;
+                    unicode = 0;
+                } else {
+                    appendSignificant(target, ch);
+                }
+                return;
+            }
+            if (ch == '\\') {
+                escape = true;
+            } else if (!inValue && ch == '=') {
+                inValue = true;
+            } else if (target.length() == 0 && (Character.isWhitespace(ch) || ch == '\uFEFF')) {
+                // leading whitespace
+            } else if (!inValue && key.length() == 0 && (ch == '#' || ch == '!')) {
+                comment = true;
+            } else {
+                if (!inValue && key.length() == 0 && ch == '@') attribute = true;
+                target.append(ch);
+                if (!Character.isWhitespace(ch)) {
+                    if (inValue) valueEnd = value.length(); else keyEnd = key.length();
+                }
+            }
+        }
+
+        private void appendSignificant(StringBuilder target, char ch) {
+            target.append(ch);
+            if (inValue) valueEnd = value.length(); else keyEnd = key.length();
+        }
+
+        private void endLine() throws IOException {
+            if (escape || unicodeDigits >= 0) throw new IOException(MessageFormat.format(ERR_INVALID_ESCAPE, line));
+            if (!comment && (key.length() > 0 || inValue)) {
+                if (!inValue) throw new IOException(MessageFormat.format(ERR_NO_SEPARATOR, line));
+                String k = key.substring(0, keyEnd);
+                String v = value.substring(0, valueEnd);
+                if (k.isEmpty() || v.isEmpty()) throw new IOException(MessageFormat.format(ERR_EMPTY_VALUE, line));
+                if (attribute) {
+                    setAttribute(k, v, line);
+                } else {
+                    addPair(k, v);
+                }
+            }
+            key.setLength(0);
+            value.setLength(0);
+            keyEnd = 0;
+            valueEnd = 0;
+            inValue = false;
+            comment = false;
+            attribute = false;
+        }
+    }
+}
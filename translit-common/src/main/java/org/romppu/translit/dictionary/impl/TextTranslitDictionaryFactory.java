@@ -0,0 +1,38 @@
+package org.romppu.translit.dictionary.impl;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.dictionary.TranslitDictionaryFactory;
+
+import java.text.MessageFormat;
+
+/**
+ * Factory of {@link TextTranslitDictionary}, the initial param is a class path resource or a file path
+ * of the <code>left = right</code> text file.
+ */
+public class TextTranslitDictionaryFactory extends TranslitDictionaryFactory {
+
+    private static final String DEFAULT_PATH = "/cyrillic_default.properties";
+    private final static String ERR_INITIALIZING = "Cannot load translit dictionary from path {0}";
+
+    @Override
+    public TranslitDictionary newTranslitDictionary() {
+        String translitDictionaryPath = System.getenv(TRANSLIT_DICT);
+        if (translitDictionaryPath == null) {
+            translitDictionaryPath = System.getProperty(TRANSLIT_DICT);
+        }
+        if (translitDictionaryPath == null) {
+            translitDictionaryPath = DEFAULT_PATH;
+        }
+        return newTranslitDictionary(translitDictionaryPath);
+    }
+
+    @Override
+    public TranslitDictionary newTranslitDictionary(String initialParam) {
+        try {
+            return new TextTranslitDictionary(initialParam);
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException(MessageFormat.format(ERR_INITIALIZING, initialParam));
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package org.romppu.translit.dictionary.impl;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.dictionary.TranslitDictionaryFactory;
+import org.romppu.translit.engine.TranslitEngine;
+import org.romppu.translit.engine.impl.TrieTranslitMatcher;
+
+import java.text.MessageFormat;
+import java.util.*;
+
+/**
+ * Registry of the dictionaries of many users (tenants), each user is identified by a key.
+ * The dictionaries are kept as {@link ImmutableTranslitDictionary} copies. Copies with the same pairs, markers and
+ * version are stored once and share one compiled {@link TranslitEngine}, the strings of all copies are interned in
+ * one pool of the registry. A dictionary which differs from another one in a few pairs may be registered as a
+ * {@link LayeredTranslitDictionary} over it, then the compiled base is shared too.
+ * The estimated memory usage of the registry is kept under the specified budget: the least recently used
+ * dictionaries are evicted, the engines already handed out stay usable. An evicted dictionary of a key unknown to
+ * the factory must be registered again.
+ * The registry is thread safe, the dictionaries are loaded and compiled under its lock.
+ */
+public class TranslitDictionaryRegistry {
+
+    private static final String ERR_NOT_FOUND = "Cannot load dictionary {0}";
+    private static final String ERR_CONDITIONS = "Dictionary {0} has conditions and cannot be a base of layers";
+    private static final int PAIR_SIZE = 112;
+    private static final int STRING_SIZE = 40;
+    private static final int ENGINE_PAIR_SIZE = 80;
+    private static final int NODE_SIZE = 14;
+
+    private final TranslitDictionaryFactory factory;
+    private final long memoryBudget;
+    private final Map<String, Entry> keys = new HashMap<String, Entry>();
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+    private final Map<String, String> pool = new HashMap<String, String>();
+    private long memoryUsage;
+
+    /**
+     * Creates a registry which loads the dictionaries by the default {@link TranslitDictionaryFactory}
+     *
+     * @param memoryBudget estimated memory budget in bytes
+     */
+    public TranslitDictionaryRegistry(long memoryBudget) {
+        this(TranslitDictionaryFactory.newInstance(), memoryBudget);
+    }
+
+    /**
+     * Creates a registry which loads the dictionaries by the specified {@see factory}
+     *
+     * @param factory      dictionary factory, the keys are passed to it as initial params
+     * @param memoryBudget estimated memory budget in bytes
+     */
+    public TranslitDictionaryRegistry(TranslitDictionaryFactory factory, long memoryBudget) {
+        this.factory = factory;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Returns the shared dictionary of the specified {@see key}, the dictionary is loaded by the factory if the key
+     * is not registered
+     *
+     * @param key dictionary key
+     * @return read-only dictionary
+     */
+    public synchronized TranslitDictionary getDictionary(String key) {
+        return getEngine(key).getDictionary();
+    }
+
+    /**
+     * Returns the shared engine of the specified {@see key}, the dictionary is loaded by the factory if the key
+     * is not registered
+     *
+     * @param key dictionary key
+     * @return compiled engine
+     */
+    public synchronized TranslitEngine getEngine(String key) {
+        return getEntry(key).engine;
+    }
+
+    /**
+     * Registers a copy of the specified {@see dictionary} under the specified {@see key}. The compiled engine of
+     * an equal dictionary is reused.
+     *
+     * @param key        dictionary key
+     * @param dictionary dictionary to register
+     * @return compiled engine
+     */
+    public synchronized TranslitEngine register(String key, TranslitDictionary dictionary) {
+        ImmutableTranslitDictionary content = new ImmutableTranslitDictionary(dictionary, pool);
+        Entry entry = entries.get(content);
+        if (entry == null) {
+            TranslitEngine engine = new TranslitEngine(content);
+            entry = add(new Entry(content, engine, null, sizeOf(content) + sizeOf(engine)));
+        }
+        bind(key, entry);
+        return entry.engine;
+    }
+
+    /**
+     * Registers under the specified {@see key} the specified {@see layers} stacked over the dictionary of
+     * the {@see baseKey}, see {@link LayeredTranslitDictionary}. The compiled base is shared by all dictionaries
+     * registered over it, the layers of a layered base are placed below the specified layers.
+     *
+     * @param key     dictionary key
+     * @param baseKey key of the base dictionary, the base is loaded by the factory if the key is not registered
+     * @param layers  override layers, the last one is the top layer
+     * @return compiled engine
+     */
+    public synchronized TranslitEngine register(String key, String baseKey, List<TranslitDictionary> layers) {
+        Entry base = getEntry(baseKey);
+        if (base.base == null && !(base.engine.getMatcher() instanceof TrieTranslitMatcher)) {
+            throw new IllegalArgumentException(MessageFormat.format(ERR_CONDITIONS, baseKey));
+        }
+        List<Object> content = new ArrayList<Object>();
+        if (base.base != null) {
+            content.addAll((List<?>) base.content);
+            base = base.base;
+        } else {
+            content.add(base.content);
+        }
+        for (TranslitDictionary layer : layers) {
+            content.add(new ImmutableTranslitDictionary(layer, pool));
+        }
+        Entry entry = entries.get(content);
+        if (entry == null) {
+            List<TranslitDictionary> frozen = new ArrayList<TranslitDictionary>();
+            long size = 0;
+            for (Object layer : content.subList(1, content.size())) {
+                frozen.add((TranslitDictionary) layer);
+                size += sizeOf((ImmutableTranslitDictionary) layer);
+            }
+            LayeredTranslitDictionary dictionary =
+                    new LayeredTranslitDictionary((TrieTranslitMatcher) base.engine.getMatcher(), frozen);
+            TranslitEngine engine = new TranslitEngine(dictionary);
+            size += (dictionary.getSize() - base.engine.getDictionary().getSize()) * PAIR_SIZE + sizeOf(engine);
+            entry = add(new Entry(content, engine, base, size));
+        }
+        bind(key, entry);
+        return entry.engine;
+    }
+
+    /**
+     * Removes the specified {@see key}, the dictionary stays in the registry while it is shared by other keys
+     * or until it is evicted
+     *
+     * @param key dictionary key
+     */
+    public synchronized void remove(String key) {
+        Entry entry = keys.remove(key);
+        if (entry != null) entry.keys.remove(key);
+    }
+
+    /**
+     * Indicates that the specified {@see key} is registered
+     *
+     * @param key dictionary key
+     * @return true if the key is registered
+     */
+    public synchronized boolean contains(String key) {
+        return keys.containsKey(key);
+    }
+
+    /**
+     * Returns amount of distinct dictionaries kept in the registry
+     *
+     * @return amount of dictionaries
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Returns estimated memory usage of the kept dictionaries and engines in bytes
+     *
+     * @return estimated memory usage
+     */
+    public synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Removes all dictionaries
+     */
+    public synchronized void clear() {
+        keys.clear();
+        entries.clear();
+        pool.clear();
+        memoryUsage = 0;
+    }
+
+    private Entry getEntry(String key) {
+        Entry entry = keys.get(key);
+        if (entry == null) {
+            TranslitDictionary dictionary = factory.newTranslitDictionary(key);
+            if (dictionary == null) throw new IllegalArgumentException(MessageFormat.format(ERR_NOT_FOUND, key));
+            register(key, dictionary);
+            entry = keys.get(key);
+        }
+        touch(entry);
+        return entry;
+    }
+
+    /**
+     * Marks the entry and its base as recently used, the base is always used later than the layered entries over
+     * it, so it is never evicted before them
+     */
+    private void touch(Entry entry) {
+        entries.get(entry.content);
+        if (entry.base != null) entries.get(entry.base.content);
+    }
+
+    private Entry add(Entry entry) {
+        entries.put(entry.content, entry);
+        memoryUsage += entry.size;
+        return entry;
+    }
+
+    private void bind(String key, Entry entry) {
+        Entry previous = keys.put(key, entry);
+        if (previous != null && previous != entry) previous.keys.remove(key);
+        entry.keys.add(key);
+        touch(entry);
+        evict(entry);
+    }
+
+    /**
+     * Evicts the least recently used entries until the memory usage fits the budget, the specified entry and its
+     * base are kept
+     */
+    private void evict(Entry current) {
+        boolean evicted = false;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (memoryUsage > memoryBudget && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest == current || eldest == current.base) break;
+            iterator.remove();
+            memoryUsage -= eldest.size;
+            for (String key : eldest.keys) {
+                keys.remove(key);
+            }
+            evicted = true;
+        }
+        if (evicted) rebuildPool();
+    }
+
+    /**
+     * Drops the strings which are used only by the evicted dictionaries
+     */
+    private void rebuildPool() {
+        pool.clear();
+        for (Entry entry : entries.values()) {
+            if (entry.content instanceof List) {
+                for (Object layer : (List<?>) entry.content) {
+                    addToPool((TranslitDictionary) layer);
+                }
+            } else {
+                addToPool((TranslitDictionary) entry.content);
+            }
+        }
+    }
+
+    private void addToPool(TranslitDictionary dictionary) {
+        for (int i = 0; i < dictionary.getSize(); i++) {
+            for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+                String value = dictionary.getValueAt(i, side);
+                pool.put(value, value);
+            }
+        }
+    }
+
+    private static long sizeOf(ImmutableTranslitDictionary dictionary) {
+        return dictionary.getSize() * (PAIR_SIZE + 2 * STRING_SIZE) + dictionary.getCharCount() * 2;
+    }
+
+    private static long sizeOf(TranslitEngine engine) {
+        long size = engine.getDictionary().getSize() * ENGINE_PAIR_SIZE;
+        if (engine.getMatcher() instanceof TrieTranslitMatcher) {
+            TrieTranslitMatcher matcher = (TrieTranslitMatcher) engine.getMatcher();
+            for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+                size += matcher.getNodeCount(side) * NODE_SIZE;
+            }
+        }
+        return size;
+    }
+
+    private static class Entry {
+        private final Object content;
+        private final TranslitEngine engine;
+        private final Entry base;
+        private final long size;
+        private final Set<String> keys = new HashSet<String>();
+
+        private Entry(Object content, TranslitEngine engine, Entry base, long size) {
+            this.content = content;
+            this.engine = engine;
+            this.base = base;
+            this.size = size;
+        }
+    }
+}
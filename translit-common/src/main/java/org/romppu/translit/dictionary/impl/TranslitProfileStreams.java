@@ -0,0 +1,188 @@
+package org.romppu.translit.dictionary.impl;
+
+import org.romppu.translit.dictionary.CharCondition;
+import org.romppu.translit.profile.TranslitProfile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.List;
+
+/**
+ * Reads and writes documents of the <code>translitprofile.xsd</code> format by StAX in one pass.
+ * Unlike JAXB it does not need a context built by reflection, so loading of a dictionary does not pay for
+ * the JAXB runtime initialization. The factories are created once and are thread safe.
+ */
+class TranslitProfileStreams {
+
+    static final String ROOT = "TranslitProfile";
+    static final String PAIR = "pair";
+    static final String LEFT = "left";
+    static final String RIGHT = "right";
+    static final String ATTR_BEFORE = "before";
+    static final String ATTR_AFTER = "after";
+    static final String ATTR_NAME = "name";
+    static final String ATTR_VERSION = "version";
+    static final String ATTR_EXCLUSION_MARKER_START = "exclusionMarkerStart";
+    static final String ATTR_EXCLUSION_MARKER_END = "exclusionMarkerEnd";
+    static final String ATTR_LEFT_DESCRIPTION = "leftDescription";
+    static final String ATTR_RIGHT_DESCRIPTION = "rightDescription";
+
+    private static final String ERR_UNEXPECTED_ELEMENT = "Unexpected element <{0}>, <{1}> is expected";
+    private static final String ERR_INCOMPLETE_PAIR = "Pair #{0} must contain <left> and <right> elements";
+    private static final String INDENT = "    ";
+
+    private static final XMLInputFactory inputFactory = newInputFactory();
+    private static final XMLOutputFactory outputFactory = newOutputFactory();
+
+    private TranslitProfileStreams() {
+    }
+
+    /**
+     * Indicates that a StAX implementation is available, otherwise the JAXB must be used
+     */
+    static boolean isAvailable() {
+        return inputFactory != null && outputFactory != null;
+    }
+
+    /**
+     * Reads a profile from the specified {@see stream}
+     *
+     * @param stream xml document
+     * @return profile
+     * @throws XMLStreamException if the document is not well formed or does not match the schema
+     */
+    static TranslitProfile read(InputStream stream) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(stream);
+        try {
+            reader.nextTag();
+            expect(reader, ROOT);
+            TranslitProfile profile = new TranslitProfile();
+            profile.setName(reader.getAttributeValue(null, ATTR_NAME));
+            profile.setVersion(reader.getAttributeValue(null, ATTR_VERSION));
+            profile.setExclusionMarkerStart(reader.getAttributeValue(null, ATTR_EXCLUSION_MARKER_START));
+            profile.setExclusionMarkerEnd(reader.getAttributeValue(null, ATTR_EXCLUSION_MARKER_END));
+            profile.setLeftDescription(reader.getAttributeValue(null, ATTR_LEFT_DESCRIPTION));
+            profile.setRightDescription(reader.getAttributeValue(null, ATTR_RIGHT_DESCRIPTION));
+            List<TranslitProfile.Pair> pairs = profile.getPair();
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                expect(reader, PAIR);
+                TranslitProfile.Pair pair = new TranslitProfile.Pair();
+                pair.setBefore(condition(reader, ATTR_BEFORE));
+                pair.setAfter(condition(reader, ATTR_AFTER));
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (LEFT.equals(name)) {
+                        pair.setLeft(reader.getElementText());
+                    } else if (RIGHT.equals(name)) {
+                        pair.setRight(reader.getElementText());
+                    } else {
+                        throw new XMLStreamException(MessageFormat.format(ERR_UNEXPECTED_ELEMENT, name, LEFT),
+                                reader.getLocation());
+                    }
+                }
+                if (pair.getLeft() == null || pair.getRight() == null) {
+                    throw new XMLStreamException(MessageFormat.format(ERR_INCOMPLETE_PAIR, pairs.size()),
+                            reader.getLocation());
+                }
+                pairs.add(pair);
+            }
+            return profile;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Writes the specified {@see profile} to the specified {@see stream} as UTF-8 formatted xml document
+     *
+     * @param profile profile to write
+     * @param stream  target stream, it is not closed
+     * @throws XMLStreamException
+     */
+    static void write(TranslitProfile profile, OutputStream stream) throws XMLStreamException {
+        XMLStreamWriter writer = outputFactory.createXMLStreamWriter(stream, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeCharacters("\n");
+        writer.writeStartElement(ROOT);
+        writeAttribute(writer, ATTR_EXCLUSION_MARKER_END, profile.getExclusionMarkerEnd());
+        writeAttribute(writer, ATTR_EXCLUSION_MARKER_START, profile.getExclusionMarkerStart());
+        writeAttribute(writer, ATTR_LEFT_DESCRIPTION, profile.getLeftDescription());
+        writeAttribute(writer, ATTR_NAME, profile.getName());
+        writeAttribute(writer, ATTR_RIGHT_DESCRIPTION, profile.getRightDescription());
+        writeAttribute(writer, ATTR_VERSION, profile.getVersion());
+        for (TranslitProfile.Pair pair : profile.getPair()) {
+            writer.writeCharacters("\n" + INDENT);
+            writer.writeStartElement(PAIR);
+            writeAttribute(writer, ATTR_AFTER, pair.getAfter());
+            writeAttribute(writer, ATTR_BEFORE, pair.getBefore());
+            writeElement(writer, LEFT, pair.getLeft());
+            writeElement(writer, RIGHT, pair.getRight());
+            writer.writeCharacters("\n" + INDENT);
+            writer.writeEndElement();
+        }
+        writer.writeCharacters("\n");
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
+    }
+
+    private static void expect(XMLStreamReader reader, String name) throws XMLStreamException {
+        if (!name.equals(reader.getLocalName())) {
+            throw new XMLStreamException(MessageFormat.format(ERR_UNEXPECTED_ELEMENT, reader.getLocalName(), name),
+                    reader.getLocation());
+        }
+    }
+
+    /**
+     * Reads the condition attribute of a pair, the condition is validated by {@link CharCondition#parse(String)}
+     */
+    private static String condition(XMLStreamReader reader, String name) throws XMLStreamException {
+        String value = reader.getAttributeValue(null, name);
+        try {
+            CharCondition.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new XMLStreamException(e.getMessage(), reader.getLocation());
+        }
+        return value;
+    }
+
+    private static void writeAttribute(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+        if (value != null) writer.writeAttribute(name, value);
+    }
+
+    private static void writeElement(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+        writer.writeCharacters("\n" + INDENT + INDENT);
+        writer.writeStartElement(name);
+        if (value != null) writer.writeCharacters(value);
+        writer.writeEndElement();
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            return factory;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private static XMLOutputFactory newOutputFactory() {
+        try {
+            return XMLOutputFactory.newInstance();
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package org.romppu.translit.dictionary.impl;
 
 
+import org.romppu.translit.dictionary.CharCondition;
+import org.romppu.translit.dictionary.ContextTranslitDictionary;
 import org.romppu.translit.dictionary.TranslitDictionary;
 import org.romppu.translit.profile.TranslitProfile;
 
@@ -17,16 +19,26 @@ import java.util.*;
  * Main goal of <code>XmlTranslitDictionary</code> is an implementing of {@link org.romppu.translit.dictionary.TranslitDictionary}
  * interface which is used by {@link org.romppu.translit.document.TranslitDocument}
  * The XmlTranslitDictionary deals with xml file which is represented by {@link org.romppu.translit.profile.TranslitProfile}
+ * The file is read and written by StAX, JAXB is used only if no StAX implementation is available.
+ * The <code>before</code> and <code>after</code> attributes of a pair are its conditions, see
+ * {@link ContextTranslitDictionary}.
  */
-public class XmlTranslitDictionary implements TranslitDictionary {
+public class XmlTranslitDictionary implements ContextTranslitDictionary {
 
     private TranslitProfile translitProfile;
     private String documentPath;
     private Map<Side, Integer> longestWordLen = new Hashtable<Side, Integer>();
+    private Map<Side, Map<String, Integer>> indexes = new EnumMap<Side, Map<String, Integer>>(Side.class);
+    private CharCondition[] beforeConditions;
+    private CharCondition[] afterConditions;
+    private boolean conditional;
+    private static JAXBContext jaxbContext;
 
     public XmlTranslitDictionary()  {
         longestWordLen.put(Side.LEFT, 0);
         longestWordLen.put(Side.RIGHT, 0);
+        indexes.put(Side.LEFT, new HashMap<String, Integer>());
+        indexes.put(Side.RIGHT, new HashMap<String, Integer>());
     }
 
     /**
@@ -99,7 +111,7 @@ public class XmlTranslitDictionary implements TranslitDictionary {
         for (TranslitProfile.Pair pair : translitProfile.getPair()) {
             if (side == Side.LEFT && value.equals(pair.getLeft())) {
                 toReturn.add(pair.getRight());
-            } else if (side == Side.RIGHT && value.equals(pair.getLeft())) {
+            } else if (side == Side.RIGHT && value.equals(pair.getRight())) {
                 toReturn.add(pair.getLeft());
             }
         }
@@ -108,11 +120,8 @@ public class XmlTranslitDictionary implements TranslitDictionary {
 
     @Override
     public int indexOf(String string, Side side) {
-        for (int i = 0; i < translitProfile.getPair().size(); i++) {
-            String value = getValueAt(i, side);
-            if (value.equals(string)) return i;
-        }
-        return -1;
+        Integer idx = indexes.get(side).get(string);
+        return idx == null ? -1 : idx;
     }
 
     /**
@@ -127,6 +136,14 @@ public class XmlTranslitDictionary implements TranslitDictionary {
         return side == Side.LEFT ? pair.getLeft() : pair.getRight();
     }
 
+    /**
+     * Returns the pair at the specified position. The parsed conditions are cached, so the conditions of
+     * the returned pair should not be changed directly, use {@link #removeAt(int)} and
+     * {@link #addPair(String, String, CharCondition, CharCondition)} instead.
+     *
+     * @param idx position of the pair
+     * @return pair
+     */
     public TranslitProfile.Pair getPairAt(int idx) {
         return translitProfile.getPair().get(idx);
     }
@@ -165,12 +182,39 @@ public class XmlTranslitDictionary implements TranslitDictionary {
         pair.setLeft(left);
         pair.setRight(right);
         translitProfile.getPair().add(pair);
+        int idx = translitProfile.getPair().size() - 1;
+        if (!indexes.get(Side.LEFT).containsKey(left)) indexes.get(Side.LEFT).put(left, idx);
+        if (!indexes.get(Side.RIGHT).containsKey(right)) indexes.get(Side.RIGHT).put(right, idx);
         updateLongestWordLen();
+        clearConditions();
+    }
+
+    @Override
+    public void addPair(String left, String right, CharCondition before, CharCondition after) {
+        addPair(left, right);
+        TranslitProfile.Pair pair = translitProfile.getPair().get(translitProfile.getPair().size() - 1);
+        pair.setBefore(before == null ? null : before.toString());
+        pair.setAfter(after == null ? null : after.toString());
+        clearConditions();
+    }
+
+    @Override
+    public CharCondition getCondition(int idx, Context context) {
+        parseConditions();
+        return context == Context.BEFORE ? beforeConditions[idx] : afterConditions[idx];
+    }
+
+    @Override
+    public boolean hasConditions() {
+        parseConditions();
+        return conditional;
     }
 
     @Override
     public void removeAt(int idx) {
         translitProfile.getPair().remove(idx);
+        updateIndexes();
+        clearConditions();
     }
 
     @Override
@@ -195,18 +239,26 @@ public class XmlTranslitDictionary implements TranslitDictionary {
 
     @Override
     public void save(OutputStream stream) throws Exception {
-        JAXBContext jc = JAXBContext.newInstance(TranslitProfile.class.getPackage().getName());
-        Marshaller m = jc.createMarshaller();
+        if (TranslitProfileStreams.isAvailable()) {
+            TranslitProfileStreams.write(translitProfile, stream);
+            return;
+        }
+        Marshaller m = getJaxbContext().createMarshaller();
         m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
         m.marshal(translitProfile, new OutputStreamWriter(stream, Charset.forName("UTF8")));
     }
 
     @Override
     public void load(InputStream stream) throws Exception {
-        JAXBContext jc = JAXBContext.newInstance(TranslitProfile.class.getPackage().getName());
-        Unmarshaller u = jc.createUnmarshaller();
-        translitProfile = (TranslitProfile) u.unmarshal(stream);
+        if (TranslitProfileStreams.isAvailable()) {
+            translitProfile = TranslitProfileStreams.read(stream);
+        } else {
+            Unmarshaller u = getJaxbContext().createUnmarshaller();
+            translitProfile = (TranslitProfile) u.unmarshal(stream);
+        }
+        updateIndexes();
         updateLongestWordLen();
+        clearConditions();
     }
 
     @Override
@@ -232,6 +284,52 @@ public class XmlTranslitDictionary implements TranslitDictionary {
         translitProfile.setVersion(newValue);
     }
 
+    private static synchronized JAXBContext getJaxbContext() throws JAXBException {
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(TranslitProfile.class.getPackage().getName());
+        }
+        return jaxbContext;
+    }
+
+    /**
+     * Rebuilds the maps of the first pair index by value which are used by {@link #indexOf(String, Side)}
+     */
+    private void updateIndexes() {
+        List<TranslitProfile.Pair> pairs = translitProfile.getPair();
+        Map<String, Integer> left = new HashMap<String, Integer>(pairs.size() * 2);
+        Map<String, Integer> right = new HashMap<String, Integer>(pairs.size() * 2);
+        for (int i = pairs.size() - 1; i >= 0; i--) {
+            left.put(pairs.get(i).getLeft(), i);
+            right.put(pairs.get(i).getRight(), i);
+        }
+        indexes.put(Side.LEFT, left);
+        indexes.put(Side.RIGHT, right);
+    }
+
+    /**
+     * Parses the conditions of all pairs once, they are parsed again only after the pairs are changed
+     */
+    private void parseConditions() {
+        if (beforeConditions != null) return;
+        List<TranslitProfile.Pair> pairs = translitProfile.getPair();
+        CharCondition[] before = new CharCondition[pairs.size()];
+        CharCondition[] after = new CharCondition[pairs.size()];
+        boolean found = false;
+        for (int i = 0; i < before.length; i++) {
+            before[i] = CharCondition.parse(pairs.get(i).getBefore());
+            after[i] = CharCondition.parse(pairs.get(i).getAfter());
+            found |= before[i] != null || after[i] != null;
+        }
+        conditional = found;
+        afterConditions = after;
+        beforeConditions = before;
+    }
+
+    private void clearConditions() {
+        beforeConditions = null;
+        afterConditions = null;
+    }
+
     private void updateLongestWordLen() {
         for (TranslitProfile.Pair pair: translitProfile.getPair()) {
             if (pair.getLeft().length() > longestWordLen.get(Side.LEFT))
@@ -29,6 +29,9 @@ public class XmlTranslitDictionaryFactory extends TranslitDictionaryFactory {
 
     @Override
     public TranslitDictionary newTranslitDictionary(String initialParam) {
+        if (initialParam.endsWith(TextTranslitDictionary.FILENAME_EXTENSION)) {
+            return new TextTranslitDictionaryFactory().newTranslitDictionary(initialParam);
+        }
         try {
             return new XmlTranslitDictionary(initialParam);
         } catch (Exception e) {
@@ -0,0 +1,147 @@
+package org.romppu.translit.document;
+
+import org.romppu.translit.TranslitDocumentException;
+import org.romppu.translit.dictionary.TranslitDictionary;
+
+import java.util.Arrays;
+
+/**
+ * Lazy {@link CharSequence} view of a {@link TranslitDocument} transliterated into the specified side.
+ * The whole text is built from the document once by {@link #toString()} or {@link #length()} and is cached.
+ * Until then {@link #charAt(int)} and {@link #subSequence(int, int)} use an index of text positions of the document
+ * elements, so a char costs O(log n) and only the requested part of the text is built. The index is built on the
+ * first such read and never together with the text. Both are dropped when the document is modified.
+ */
+public class TranslitCharSequence implements CharSequence {
+
+    private final TranslitDocument document;
+    private final TranslitDocument.StringBuildingContext buildingContext;
+    private int modificationCount = -1;
+    private int[] ends;
+    private String string;
+
+    public TranslitCharSequence(TranslitDocument document, TranslitDictionary.Side side) {
+        this.document = document;
+        this.buildingContext = new TranslitDocument.StringBuildingContext(side);
+    }
+
+    public TranslitDocument getDocument() {
+        return document;
+    }
+
+    public TranslitDictionary.Side getSide() {
+        return buildingContext.getSide();
+    }
+
+    @Override
+    public int length() {
+        validate();
+        if (string == null && ends != null) return ends.length == 0 ? 0 : ends[ends.length - 1];
+        return toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        validate();
+        if (string != null) return string.charAt(index);
+        index();
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Invalid index " + index);
+        }
+        int element = elementAt(index);
+        return value(element).charAt(index - start(element));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        validate();
+        if (string != null) return string.substring(start, end);
+        index();
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Invalid range (" + start + "," + end + ")");
+        }
+        if (start == end) return "";
+        StringBuilder builder = new StringBuilder(end - start);
+        int first = elementAt(start);
+        int last = elementAt(end - 1);
+        try {
+            document.writeString(first, last + 1, buildingContext.getSide(), builder);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        int offset = start(first);
+        return builder.substring(start - offset, end - offset);
+    }
+
+    /**
+     * Converts the specified text position to the index of the element which contains it
+     *
+     * @param position text position
+     * @return element index
+     */
+    public int elementAt(int position) {
+        validate();
+        index();
+        int pos = Arrays.binarySearch(ends, position + 1);
+        if (pos < 0) return -pos - 1;
+        while (pos > 0 && ends[pos - 1] == position + 1) pos--;
+        return pos;
+    }
+
+    /**
+     * Returns the text position of the specified element
+     *
+     * @param element element index
+     * @return text position
+     */
+    public int start(int element) {
+        validate();
+        index();
+        return element == 0 ? 0 : ends[element - 1];
+    }
+
+    @Override
+    public String toString() {
+        validate();
+        if (string == null) {
+            try {
+                string = document.getString(buildingContext.getSide());
+            } catch (TranslitDocumentException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return string;
+    }
+
+    /**
+     * Drops the cached text and the index if the document has been modified
+     */
+    private void validate() {
+        if (modificationCount == document.getModificationCount()) return;
+        string = null;
+        ends = null;
+        modificationCount = document.getModificationCount();
+    }
+
+    /**
+     * Builds the index of text positions of the elements if it is not built yet
+     */
+    private void index() {
+        if (ends != null) return;
+        int[] newEnds = new int[document.getSize()];
+        int position = 0;
+        for (int i = 0; i < newEnds.length; i++) {
+            position += value(i).length();
+            newEnds[i] = position;
+        }
+        ends = newEnds;
+    }
+
+    private String value(int element) {
+        try {
+            return document.getElement(element).getStringValue(buildingContext);
+        } catch (TranslitDocumentException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package org.romppu.translit.document;
 
 import org.romppu.translit.TranslitDocumentException;
+import org.romppu.translit.dictionary.ContextTranslitDictionary;
 import org.romppu.translit.dictionary.TranslitDictionary;
 
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,6 +18,11 @@ import java.util.List;
  */
 public abstract class TranslitDocument {
 
+    private static final String ERR_INVALID_RANGE = "Invalid elements range ({0},{1}). Document size: {2}";
+    private static final String ERR_MODIFIED = "Document has been modified after the mutation was prepared";
+
+    private int modificationCount;
+
     /**
      * Returns document content as string
      *
@@ -31,6 +41,75 @@ public abstract class TranslitDocument {
      */
     public abstract String getString(List<Element> elementList, TranslitDictionary.Side side) throws TranslitDocumentException;
 
+    /**
+     * Returns content of the specified range of elements as string
+     *
+     * @param start first element index
+     * @param end   element index after the last element of the range
+     * @param side  text will be transliterated from the specified side into an opposite side
+     * @return transliterated text of the range
+     * @throws TranslitDocumentException if the range is out of the document
+     */
+    public String getString(int start, int end, TranslitDictionary.Side side) throws TranslitDocumentException {
+        validateRange(start, end);
+        StringBuilder builder = new StringBuilder(end - start);
+        try {
+            writeString(start, end, side, builder);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes content of the specified range of elements to the specified {@see out} without building
+     * intermediate strings of the range.
+     *
+     * @param start first element index
+     * @param end   element index after the last element of the range
+     * @param side  text will be transliterated from the specified side into an opposite side
+     * @param out   receives transliterated text
+     * @throws TranslitDocumentException if the range is out of the document
+     * @throws IOException               if {@see out} fails
+     */
+    public void writeString(int start, int end, TranslitDictionary.Side side, Appendable out)
+            throws TranslitDocumentException, IOException {
+        validateRange(start, end);
+        StringBuildingContext buildingContext = new StringBuildingContext(side);
+        for (int i = start; i < end; i++) {
+            out.append(getElement(i).getStringValue(buildingContext));
+        }
+    }
+
+    /**
+     * Writes content of the specified range of elements to the specified {@see buffer}. Writing stops before the
+     * first element which doesn't fit into the remaining space of the buffer, the returned index may be used
+     * as the start of the next page after the buffer is drained. An element is never split, an element longer than
+     * the capacity of the buffer cannot be written at all, so the paging would never advance.
+     *
+     * @param start  first element index
+     * @param end    element index after the last element of the range
+     * @param side   text will be transliterated from the specified side into an opposite side
+     * @param buffer receives transliterated text
+     * @return index of the first element which was not written, {@see end} if the whole range was written
+     * @throws TranslitDocumentException if the range is out of the document
+     * @throws BufferOverflowException   if an element of the range is longer than the capacity of the buffer
+     */
+    public int writeString(int start, int end, TranslitDictionary.Side side, CharBuffer buffer)
+            throws TranslitDocumentException {
+        validateRange(start, end);
+        StringBuildingContext buildingContext = new StringBuildingContext(side);
+        for (int i = start; i < end; i++) {
+            String value = getElement(i).getStringValue(buildingContext);
+            if (value.length() > buffer.remaining()) {
+                validateCapacity(value.length(), buffer);
+                return i;
+            }
+            buffer.put(value);
+        }
+        return end;
+    }
+
     /**
      * Sets document content from the specified string. String will no be transliterated, but it will be recognized as
      * transliterated content.
@@ -74,6 +153,21 @@ public abstract class TranslitDocument {
      */
     public abstract TranslitDictionary getDictionary();
 
+    /**
+     * Binds the document to the specified {@see dictionary}. Elements of pairs which exist in both dictionaries are
+     * kept, only the parts of the content where the result of parsing may differ are parsed again.
+     * The content transliterated into the specified {@see side} is not changed.
+     *
+     * The dictionary must be a new instance: the elements refer to the pairs by index, so a dictionary edited in
+     * place while the document is bound to it has already changed the content. To change the rules, edit a copy of
+     * the dictionary and pass the copy.
+     *
+     * @param dictionary new translit dictionary
+     * @param side       content of the changed parts is parsed from the specified side
+     * @throws TranslitDocumentException if the document cannot be bound to the dictionary
+     */
+    public abstract void rebind(TranslitDictionary dictionary, TranslitDictionary.Side side) throws TranslitDocumentException;
+
     /**
      * Inserts the specified {@see text} at the specified {@see index} of the document's elements.
      * The {@see text} will be transliterated from the specified {@see side} into an opposite side.
@@ -87,6 +181,70 @@ public abstract class TranslitDocument {
      */
     public abstract Mutation insertAt(int index, String text, TranslitDictionary.Side side) throws TranslitDocumentException;
 
+    /**
+     * First step of the {@link #insertAt} method split into {@link #prepareInsert}, {@link #parseMutation} and
+     * {@link #applyMutation}. It captures the state of the document which is needed to parse the inserted text.
+     * The split allows to parse large texts outside of the thread which modifies the document.
+     *
+     * @param index element index
+     * @param text  to insert
+     * @param side  text will be transliterated from the specified side into an opposite side
+     * @return mutation which must be passed to {@link #parseMutation} and {@link #applyMutation}
+     * @throws TranslitDocumentException
+     */
+    public Mutation prepareInsert(int index, String text, TranslitDictionary.Side side) throws TranslitDocumentException {
+        if (index > getSize() || index < 0) {
+            throw new TranslitDocumentException("Invalid index " + index);
+        }
+        Mutation mutation = new Mutation(index, text, side, getModificationCount());
+        mutation.setLeftShift(index);
+        mutation.setOffset(index);
+        mutation.getStringBuffer().append(text);
+        return mutation;
+    }
+
+    /**
+     * Puts the text of the element preceding the left shift of the specified {@see mutation} in front of its string
+     * buffer if the dictionary has conditions, so the conditions of the first parsed word see the real preceding
+     * character instead of a word boundary (see {@link Mutation#getContext()})
+     *
+     * @param mutation mutation which is being prepared
+     * @throws TranslitDocumentException
+     */
+    protected void addContext(Mutation mutation) throws TranslitDocumentException {
+        if (mutation.getLeftShift() == 0 || !(getDictionary() instanceof ContextTranslitDictionary)
+                || !((ContextTranslitDictionary) getDictionary()).hasConditions()) {
+            return;
+        }
+        String context = getString(mutation.getLeftShift() - 1, mutation.getLeftShift(), mutation.getSide());
+        mutation.getStringBuffer().insert(0, context);
+        mutation.setContext(context.length());
+    }
+
+    /**
+     * Second step of the {@link #insertAt} method. It parses the text of the specified prepared mutation and does not
+     * access elements of the document, so it may be invoked by any thread.
+     *
+     * @param mutation prepared by {@link #prepareInsert}
+     */
+    public void parseMutation(Mutation mutation) {
+    }
+
+    /**
+     * Last step of the {@link #insertAt} method. It applies the specified parsed mutation to the document.
+     *
+     * @param mutation parsed by {@link #parseMutation}
+     * @throws TranslitDocumentException if the document has been modified after {@link #prepareInsert}
+     */
+    public void applyMutation(Mutation mutation) throws TranslitDocumentException {
+        validateMutation(mutation);
+        Mutation result = insertAt(mutation.getIndex(), mutation.getText(), mutation.getSide());
+        mutation.setLeftShift(result.getLeftShift());
+        mutation.setOffset(result.getOffset());
+        mutation.setOldElements(result.oldElements());
+        mutation.setNewElements(result.newElements());
+    }
+
     /**
      * Removes the specified {@see amount} of elements from the specified {@see position} of the document.
      *
@@ -132,15 +290,112 @@ public abstract class TranslitDocument {
      */
     public abstract void clear();
 
+    /**
+     * Returns a view of the document content transliterated into the specified side. The view does not copy the
+     * content, it follows all later changes of the document.
+     *
+     * @param side LEFT or RIGHT
+     * @return char sequence view
+     */
+    public CharSequence getCharSequence(TranslitDictionary.Side side) {
+        return new TranslitCharSequence(this, side);
+    }
+
+    /**
+     * Returns amount of changes made to the document. Views and caches use it to find out that the document has
+     * been changed since they were built.
+     *
+     * @return modification count
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Checks that the specified range of elements is inside of the document
+     *
+     * @param start first element index
+     * @param end   element index after the last element of the range
+     * @throws TranslitDocumentException if the range is out of the document
+     */
+    protected void validateRange(int start, int end) throws TranslitDocumentException {
+        if (start > end || end > getSize() || start < 0)
+            throw new TranslitDocumentException(MessageFormat.format(ERR_INVALID_RANGE, start, end, getSize()));
+    }
+
+    /**
+     * Checks that a value of the specified {@see length} fits into the specified {@see buffer} once it is drained
+     *
+     * @throws BufferOverflowException if the value is longer than the capacity of the buffer
+     */
+    protected static void validateCapacity(int length, CharBuffer buffer) {
+        if (length > buffer.capacity()) throw new BufferOverflowException();
+    }
+
+    /**
+     * Checks that the document has not been modified after the specified mutation was prepared
+     *
+     * @param mutation prepared mutation
+     * @throws TranslitDocumentException if the document has been modified
+     */
+    protected void validateMutation(Mutation mutation) throws TranslitDocumentException {
+        if (mutation.getModificationCount() != getModificationCount())
+            throw new TranslitDocumentException(ERR_MODIFIED);
+    }
+
+    /**
+     * Must be invoked by implementations after every change of the elements
+     */
+    protected void modified() {
+        modificationCount++;
+    }
+
     /**
      * Used by the {link #insertAt} method. Contains document's changes occurred after insertion.
      */
     public static class Mutation {
+        private int index;
+        private String text;
+        private TranslitDictionary.Side side;
+        private int modificationCount;
         private int offset;
         private ArrayList<Element> oldElements = new ArrayList<Element>();
         private ArrayList<Element> newElements = new ArrayList<Element>();
         private final StringBuffer stringBuffer = new StringBuffer(4);
         private int leftShift;
+        private int context;
+
+        public Mutation() {
+        }
+
+        public Mutation(int index, String text, TranslitDictionary.Side side, int modificationCount) {
+            this.index = index;
+            this.text = text;
+            this.side = side;
+            this.modificationCount = modificationCount;
+        }
+
+        /**
+         * Returns element index the text is inserted at
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public TranslitDictionary.Side getSide() {
+            return side;
+        }
+
+        /**
+         * Returns modification count of the document at the moment the mutation was prepared
+         */
+        public int getModificationCount() {
+            return modificationCount;
+        }
 
         public ArrayList<Element> oldElements() {
             return oldElements;
@@ -162,6 +417,18 @@ public abstract class TranslitDocument {
             return stringBuffer;
         }
 
+        /**
+         * Returns the number of the leading characters of the string buffer which are not parsed, they are the text
+         * of the element preceding the left shift and only serve the conditions of the first parsed word
+         */
+        public int getContext() {
+            return context;
+        }
+
+        public void setContext(int context) {
+            this.context = context;
+        }
+
         public ArrayList<Element> newElements() {
             return newElements;
         }
@@ -1,9 +1,12 @@
 package org.romppu.translit.document.impl;
 
 import org.romppu.translit.TranslitDocumentException;
+import org.romppu.translit.dictionary.CharCondition;
+import org.romppu.translit.dictionary.ContextTranslitDictionary;
 import org.romppu.translit.dictionary.TranslitDictionary;
 import org.romppu.translit.document.TranslitDocument;
 
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.*;
 
@@ -17,6 +20,7 @@ public class DefaultTranslitDocument extends TranslitDocument {
 
     private static final String ERR_INVALID_DATA_RANGE = "Invalid data range ({0},{1}). Collection rowCount: {2}";
     private static final String ERR_INVALID_DATA_POS = "Invalid position ({0}). Position must be in range [{1}-{2}]";
+    private static final String ERR_SAME_DICTIONARY = "Document is already bound to the dictionary, pass an edited copy";
 
     private TranslitDictionary dictionary;
 
@@ -71,6 +75,7 @@ public class DefaultTranslitDocument extends TranslitDocument {
         doc.setMatchSelectionStrategy(strategy);
         ParsingContext parsingContext = doc.parse(text, side);
         doc.elements.addAll(parsingContext.elements());
+        doc.modified();
         return doc;
     }
 
@@ -126,6 +131,7 @@ public class DefaultTranslitDocument extends TranslitDocument {
     @Override
     public void clear() {
         elements.removeAllElements();
+        modified();
     }
 
     /**
@@ -158,6 +164,7 @@ public class DefaultTranslitDocument extends TranslitDocument {
                 }
             }
         }
+        modified();
     }
 
     @Override
@@ -177,6 +184,7 @@ public class DefaultTranslitDocument extends TranslitDocument {
                 }
             }
         }
+        modified();
     }
 
     /**
@@ -201,6 +209,25 @@ public class DefaultTranslitDocument extends TranslitDocument {
         return buildString(elementList, side, false);
     }
 
+    /**
+     * Writes content of the specified range of elements to the specified {@see out}
+     * @param start first element index
+     * @param end element index after the last element of the range
+     * @param side text will be transliterated from the specified side into an opposite side
+     * @param out receives transliterated text
+     * @throws TranslitDocumentException
+     * @throws IOException
+     */
+    @Override
+    public void writeString(int start, int end, TranslitDictionary.Side side, Appendable out)
+            throws TranslitDocumentException, IOException {
+        validateElementsRange(start, end);
+        StringBuildingContext stringBuildingContext = new StringBuildingContext(side);
+        for (int i = start; i < end; i++) {
+            out.append(elements.get(i).getStringValue(stringBuildingContext));
+        }
+    }
+
     /**
      * Inserts the specified {@see text} into the elements list at the specified {@see index}.
      * The {@see text} will be transliterated from the specified {@see side} into an opposite side.
@@ -214,11 +241,29 @@ public class DefaultTranslitDocument extends TranslitDocument {
      */
     @Override
     public Mutation insertAt(int index, String text, TranslitDictionary.Side side) throws TranslitDocumentException {
+        Mutation mutation = prepareInsert(index, text, side);
+        parseMutation(mutation);
+        applyMutation(mutation);
+        return mutation;
+    }
+
+    /**
+     * Collects the transliterated elements before the specified {@see index} which may be joined with the
+     * inserted text into a longer dictionary word.
+     *
+     * @param index element index
+     * @param text  to insert
+     * @param side  text will be transliterated from the specified side into an opposite side
+     * @return prepared mutation
+     * @throws TranslitDocumentException
+     */
+    @Override
+    public Mutation prepareInsert(int index, String text, TranslitDictionary.Side side) throws TranslitDocumentException {
         if (index > elements.size() || index < 0) {
             throw new TranslitDocumentException("Invalid index " + index);
         }
         int longestWord = getDictionary().getLongestWordLen(side);
-        Mutation mutation = new Mutation();
+        Mutation mutation = new Mutation(index, text, side, getModificationCount());
         mutation.setLeftShift(index);
         if (elements.size() > 0) {
             StringBuildingContext buildingContext = new StringBuildingContext(side);
@@ -231,16 +276,39 @@ public class DefaultTranslitDocument extends TranslitDocument {
                 mutation.getStringBuffer().insert(0, element.getStringValue(buildingContext));
             }
         }
-        removeElements(mutation.getLeftShift(), mutation.oldElements().size());
+        addContext(mutation);
         mutation.getStringBuffer().append(text);
-        ParsingContext parsingContext = parse(mutation.getStringBuffer().toString(), side);
+        return mutation;
+    }
+
+    /**
+     * Parses the text of the specified mutation, elements of the document are not accessed.
+     *
+     * @param mutation prepared mutation
+     */
+    @Override
+    public void parseMutation(Mutation mutation) {
+        ParsingContext parsingContext = parse(mutation.getStringBuffer().toString(), mutation.getContext(),
+                mutation.getSide());
         mutation.newElements().addAll(parsingContext.elements());
-        mutation.setOffset(index);
+        mutation.setOffset(mutation.getIndex());
         if (mutation.newElements().size() - 1 < mutation.oldElements().size()) {
             mutation.setOffset(mutation.getOffset() - (mutation.oldElements().size() - (mutation.newElements().size() - 1)));
         }
+    }
+
+    /**
+     * Replaces the collected elements with the parsed ones
+     *
+     * @param mutation parsed mutation
+     * @throws TranslitDocumentException if the document has been modified after the mutation was prepared
+     */
+    @Override
+    public void applyMutation(Mutation mutation) throws TranslitDocumentException {
+        validateMutation(mutation);
+        removeElements(mutation.getLeftShift(), mutation.oldElements().size());
         elements.addAll(mutation.getLeftShift(), mutation.newElements());
-        return mutation;
+        modified();
     }
 
     /**
@@ -307,6 +375,7 @@ public class DefaultTranslitDocument extends TranslitDocument {
             toRemove.add(elements.get(i));
         }
         elements.removeAll(toRemove);
+        modified();
     }
 
     @Override
@@ -324,9 +393,65 @@ public class DefaultTranslitDocument extends TranslitDocument {
         return dictionary;
     }
 
+    /**
+     * Binds the document to the specified {@see dictionary}, index elements of unchanged pairs are remapped
+     * to the new indexes and only the ranges where a changed word matches the content are parsed again.
+     *
+     * @param dictionary new translit dictionary
+     * @param side       content of the changed ranges is parsed from the specified side
+     * @throws TranslitDocumentException if the document is already bound to the same dictionary instance
+     */
+    @Override
+    public void rebind(TranslitDictionary dictionary, TranslitDictionary.Side side) throws TranslitDocumentException {
+        if (dictionary == this.dictionary) {
+            throw new TranslitDocumentException(ERR_SAME_DICTIONARY);
+        }
+        DictionaryDiff diff = new DictionaryDiff(this.dictionary, dictionary);
+        StringBuildingContext stringBuildingContext = new StringBuildingContext(side);
+        int size = elements.size();
+        StringBuilder text = new StringBuilder();
+        int[] starts = new int[size + 1];
+        boolean[] dirty = new boolean[size];
+        boolean[] fixed = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            Element element = elements.get(i);
+            starts[i] = text.length();
+            text.append(element.getStringValue(stringBuildingContext));
+            if (element instanceof IndexElement) {
+                dirty[i] = diff.remap(((IndexElement) element).getIndex()) < 0;
+            } else if (element instanceof ExclusionMarkerElement) {
+                fixed[i] = true;
+            }
+        }
+        starts[size] = text.length();
+        List<int[]> ranges = diff.findChangedRanges(text, starts, dirty, fixed, side);
+        Vector<Element> newElements = new Vector<Element>(size);
+        this.dictionary = dictionary;
+        int pos = 0;
+        for (int[] range : ranges) {
+            for (; pos < range[0]; pos++) {
+                newElements.add(remap(elements.get(pos), diff));
+            }
+            newElements.addAll(parse(text.substring(starts[range[0]], starts[range[1]]), side).elements());
+            pos = range[1];
+        }
+        for (; pos < size; pos++) {
+            newElements.add(remap(elements.get(pos), diff));
+        }
+        elements = newElements;
+        modified();
+    }
+
+    private Element remap(Element element, DictionaryDiff diff) {
+        if (element instanceof IndexElement) {
+            return new IndexElement(diff.remap(((IndexElement) element).getIndex()));
+        }
+        return element;
+    }
+
     private String buildString(List<Element> list, TranslitDictionary.Side side, boolean addMarkers) throws TranslitDocumentException {
         StringBuildingContext stringBuildingContext = new StringBuildingContext(side);
-        StringBuffer stringBuffer = new StringBuffer();
+        StringBuilder stringBuffer = new StringBuilder();
         boolean startMarker = false;
         for (Iterator<Element> i = list.iterator(); i.hasNext(); ) {
             Element e = i.next();
@@ -354,13 +479,20 @@ public class DefaultTranslitDocument extends TranslitDocument {
     }
 
     private ParsingContext parse(String text, TranslitDictionary.Side side) {
+        return parse(text, 0, side);
+    }
+
+    private ParsingContext parse(String text, int start, TranslitDictionary.Side side) {
         ParsingContext context = new ParsingContext(text, side);
+        context.setPosition(start);
         while (context.getPosition() < text.length()) {
             SortedSet matchSet = newSynchronizedSortedSet();
             String part = text.substring(context.getPosition(), text.length());
             for (int i = 0; i < dictionary.getSize(); i++) {
+                if (DictionaryDiff.isHidden(dictionary, i)) continue;
                 String dictionaryValue = dictionary.getValueAt(i, side);
-                if (part.startsWith(dictionaryValue)) {
+                if (part.startsWith(dictionaryValue)
+                        && conditionsHold(text, context.getPosition(), dictionaryValue.length(), i)) {
                     matchSet.add(new Match(i, dictionaryValue));
                 }
             }
@@ -389,6 +521,19 @@ public class DefaultTranslitDocument extends TranslitDocument {
         return context;
     }
 
+    /**
+     * Checks the conditions of the pair at the specified index if the dictionary is
+     * a {@link ContextTranslitDictionary}, the text around the parsed part is not known, so the beginning and the end
+     * of the text are word boundaries
+     */
+    private boolean conditionsHold(String text, int position, int length, int idx) {
+        if (!(dictionary instanceof ContextTranslitDictionary)) return true;
+        ContextTranslitDictionary contextDictionary = (ContextTranslitDictionary) dictionary;
+        CharCondition before = contextDictionary.getCondition(idx, ContextTranslitDictionary.Context.BEFORE);
+        CharCondition after = contextDictionary.getCondition(idx, ContextTranslitDictionary.Context.AFTER);
+        return (before == null || before.accepts(text, position - 1))
+                && (after == null || after.accepts(text, position + length));
+    }
 
     private void validatePosition(int pos) throws TranslitDocumentException {
         if (pos + 1 > elements.size() || pos < 0)
@@ -418,6 +563,10 @@ public class DefaultTranslitDocument extends TranslitDocument {
             this.index = index;
         }
 
+        public int getIndex() {
+            return index;
+        }
+
         @Override
         public String getStringValue(StringBuildingContext buildingContext) {
             return getDictionary().getValueAt(index, buildingContext.getSide());
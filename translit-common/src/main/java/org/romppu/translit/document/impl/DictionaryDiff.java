@@ -0,0 +1,196 @@
+package org.romppu.translit.document.impl;
+
+import org.romppu.translit.dictionary.ContextTranslitDictionary;
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.dictionary.impl.LayeredTranslitDictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Difference between two dictionaries, it is used to rebind a document to a new dictionary without parsing
+ * the whole content again.
+ * A pair is unchanged if the new dictionary contains a pair with the same left and right values, elements of such
+ * pairs are remapped to the new index. A word is changed if the pair found for it in the new dictionary differs from
+ * the pair found in the old one, the parsing result may differ only where a changed word matches the text.
+ * The conditions of a {@link ContextTranslitDictionary} are a part of the pair, all pairs of a word up to the first
+ * one without conditions are compared. The pairs hidden by a layer of a {@link LayeredTranslitDictionary} are never
+ * matched, so they are neither compared nor remapped to.
+ * The whole content is parsed again if the dictionary is the same instance, which may have been edited in place
+ * (a document which keeps the values of the old pairs in its engine can be bound to it again),
+ * or if any of the dictionaries has conditions: a parsed range does not see the characters around it, so the result
+ * of a condition at its edge might differ from the result of the whole text.
+ */
+class DictionaryDiff {
+
+    private final int[] remap;
+    private final boolean complete;
+    private final List<Map<Character, List<String>>> changedWords = new ArrayList<Map<Character, List<String>>>();
+
+    DictionaryDiff(TranslitDictionary oldDictionary, TranslitDictionary newDictionary) {
+        complete = oldDictionary == newDictionary || hasConditions(oldDictionary) || hasConditions(newDictionary);
+        Map<String, Integer> newPairs = new HashMap<String, Integer>();
+        for (int i = newDictionary.getSize() - 1; i >= 0; i--) {
+            if (isHidden(newDictionary, i)) continue;
+            newPairs.put(pairKey(newDictionary, i), i);
+        }
+        remap = new int[oldDictionary.getSize()];
+        for (int i = 0; i < remap.length; i++) {
+            Integer idx = newPairs.get(pairKey(oldDictionary, i));
+            remap[i] = idx == null ? -1 : idx;
+        }
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            Map<String, String> oldWords = firstPairs(oldDictionary, side);
+            Map<String, String> newWords = firstPairs(newDictionary, side);
+            Set<String> words = new HashSet<String>(oldWords.keySet());
+            words.addAll(newWords.keySet());
+            Map<Character, List<String>> changed = new HashMap<Character, List<String>>();
+            for (String word : words) {
+                String oldPair = oldWords.get(word);
+                if (oldPair == null || !oldPair.equals(newWords.get(word))) {
+                    List<String> list = changed.get(word.charAt(0));
+                    if (list == null) {
+                        list = new ArrayList<String>(2);
+                        changed.put(word.charAt(0), list);
+                    }
+                    list.add(word);
+                }
+            }
+            changedWords.add(side.ordinal(), changed);
+        }
+    }
+
+    /**
+     * Returns index of the same pair in the new dictionary
+     *
+     * @param oldIndex index in the old dictionary
+     * @return new index or -1 if the pair is removed
+     */
+    int remap(int oldIndex) {
+        return remap[oldIndex];
+    }
+
+    /**
+     * Indicates that the specified word is parsed differently by the new dictionary
+     */
+    boolean isChanged(String word, TranslitDictionary.Side side) {
+        List<String> list = changedWords.get(side.ordinal()).get(word.charAt(0));
+        return list != null && list.contains(word);
+    }
+
+    /**
+     * Returns length of the longest changed word which starts at the specified position of the text
+     *
+     * @return length of the word or 0
+     */
+    int changedWordLength(CharSequence text, int position, TranslitDictionary.Side side) {
+        List<String> list = changedWords.get(side.ordinal()).get(text.charAt(position));
+        if (list == null) return 0;
+        int length = 0;
+        for (String word : list) {
+            if (word.length() > length && regionMatches(text, position, word)) length = word.length();
+        }
+        return length;
+    }
+
+    /**
+     * Finds ranges of elements which must be parsed again. If the whole content must be parsed again, the ranges are
+     * all elements between the exclusion markers.
+     *
+     * @param text   content of the document on the specified side
+     * @param starts text positions of elements, the last item is the text length
+     * @param dirty  elements which are known to be changed, the array is updated
+     * @param fixed  elements which must not be parsed again (exclusion markers)
+     * @param side   side of the text
+     * @return ranges of elements [start, end) in the ascending order
+     */
+    List<int[]> findChangedRanges(CharSequence text, int[] starts, boolean[] dirty, boolean[] fixed, TranslitDictionary.Side side) {
+        int size = dirty.length;
+        if (complete) Arrays.fill(dirty, true);
+        int element = 0;
+        for (int position = 0; position < text.length(); position++) {
+            while (starts[element + 1] <= position) element++;
+            char ch = text.charAt(position);
+            if (isChanged(String.valueOf(ch), side.invert())) dirty[element] = true;
+            int length = changedWordLength(text, position, side);
+            for (int i = element; length > 0 && i < size && starts[i] < position + length; i++) {
+                dirty[i] = true;
+            }
+        }
+        List<int[]> ranges = new ArrayList<int[]>();
+        int i = 0;
+        while (i < size) {
+            if (!dirty[i] || fixed[i]) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < size && dirty[i] && !fixed[i]) i++;
+            if (start > 0 && !fixed[start - 1]) start--;
+            if (i < size && !fixed[i]) i++;
+            if (!ranges.isEmpty() && ranges.get(ranges.size() - 1)[1] >= start) {
+                ranges.get(ranges.size() - 1)[1] = i;
+            } else {
+                ranges.add(new int[]{start, i});
+            }
+        }
+        return ranges;
+    }
+
+    private static boolean regionMatches(CharSequence text, int position, String word) {
+        if (position + word.length() > text.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (text.charAt(position + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static String pairKey(TranslitDictionary dictionary, int idx) {
+        String key = dictionary.getValueAt(idx, TranslitDictionary.Side.LEFT) + '\u0000'
+                + dictionary.getValueAt(idx, TranslitDictionary.Side.RIGHT);
+        if (!isConditional(dictionary, idx)) return key;
+        ContextTranslitDictionary contextDictionary = (ContextTranslitDictionary) dictionary;
+        return key + '\u0000' + contextDictionary.getCondition(idx, ContextTranslitDictionary.Context.BEFORE)
+                + '\u0000' + contextDictionary.getCondition(idx, ContextTranslitDictionary.Context.AFTER);
+    }
+
+    /**
+     * Indicates that the pair at the specified index is replaced by a layer and must not be matched
+     */
+    static boolean isHidden(TranslitDictionary dictionary, int idx) {
+        return dictionary instanceof LayeredTranslitDictionary && ((LayeredTranslitDictionary) dictionary).isHidden(idx);
+    }
+
+    private static boolean hasConditions(TranslitDictionary dictionary) {
+        return dictionary instanceof ContextTranslitDictionary && ((ContextTranslitDictionary) dictionary).hasConditions();
+    }
+
+    private static boolean isConditional(TranslitDictionary dictionary, int idx) {
+        if (!(dictionary instanceof ContextTranslitDictionary)) return false;
+        ContextTranslitDictionary contextDictionary = (ContextTranslitDictionary) dictionary;
+        return contextDictionary.getCondition(idx, ContextTranslitDictionary.Context.BEFORE) != null
+                || contextDictionary.getCondition(idx, ContextTranslitDictionary.Context.AFTER) != null;
+    }
+
+    /**
+     * Returns the keys of the pairs which may be used for every word, these are the pairs up to the first one
+     * without conditions
+     */
+    private static Map<String, String> firstPairs(TranslitDictionary dictionary, TranslitDictionary.Side side) {
+        Map<String, String> map = new HashMap<String, String>();
+        Set<String> complete = new HashSet<String>();
+        for (int i = 0; i < dictionary.getSize(); i++) {
+            String word = dictionary.getValueAt(i, side);
+            if (word.isEmpty() || complete.contains(word) || isHidden(dictionary, i)) continue;
+            String key = map.get(word);
+            map.put(word, key == null ? pairKey(dictionary, i) : key + '\u0001' + pairKey(dictionary, i));
+            if (!isConditional(dictionary, i)) complete.add(word);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,600 @@
+package org.romppu.translit.document.impl;
+
+import org.romppu.translit.TranslitDocumentException;
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.document.TranslitDocument;
+import org.romppu.translit.engine.TranslitEngine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation of {@link TranslitDocument} for very large documents.
+ * The OffHeapTranslitDocument does not keep an object per element, every element is packed into a single int
+ * of a direct buffer which lives outside of the java heap:
+ * <ul>
+ * <li>value &gt;= 0 - index of the dictionary pair</li>
+ * <li>{@link #START_MARKER}, {@link #END_MARKER} - exclusion markers</li>
+ * <li>other negative value - character which is not found in the dictionary, see {@link #encodeCharacter(char)}</li>
+ * </ul>
+ * The buffer is organized as a gap buffer, so sequential editing at the same place does not move the whole content.
+ * Elements returned by {@link #getElement(int)} are created on demand and are not stored.
+ */
+public class OffHeapTranslitDocument extends TranslitDocument {
+
+    public static final int START_MARKER = -1;
+    public static final int END_MARKER = -2;
+
+    private static final String ERR_INVALID_DATA_POS = "Invalid position ({0}). Position must be in range [{1}-{2}]";
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int COPY_CHUNK = 4096;
+
+    private TranslitEngine engine;
+    private IntBuffer buffer;
+    private int gapStart;
+    private int gapEnd;
+    private final int[] chunk = new int[COPY_CHUNK];
+
+    /**
+     * Creates a new instance of OffHeapTranslitDocument with the specified {@see dictionary}
+     *
+     * @param dictionary translit dictionary
+     */
+    public OffHeapTranslitDocument(TranslitDictionary dictionary) {
+        this(new TranslitEngine(dictionary));
+    }
+
+    /**
+     * Creates a new instance of OffHeapTranslitDocument which shares the specified compiled {@see engine}
+     *
+     * @param engine translit engine
+     */
+    public OffHeapTranslitDocument(TranslitEngine engine) {
+        this.engine = engine;
+        buffer = allocate(INITIAL_CAPACITY);
+        gapStart = 0;
+        gapEnd = INITIAL_CAPACITY;
+    }
+
+    /**
+     * Parses the specified text and creates a new instance of the OffHeapTranslitDocument
+     *
+     * @param engine translit engine
+     * @param text   to transliteration
+     * @param side   text will be transliterated from the specified side into an opposite side
+     * @return new instance of OffHeapTranslitDocument
+     */
+    public static OffHeapTranslitDocument create(TranslitEngine engine, CharSequence text, TranslitDictionary.Side side) {
+        OffHeapTranslitDocument doc = new OffHeapTranslitDocument(engine);
+        int[] codes = doc.parse(text, side);
+        doc.insertCodes(0, codes, codes.length);
+        doc.modified();
+        return doc;
+    }
+
+    /**
+     * Encodes the specified character which is not found in the dictionary
+     *
+     * @param ch character
+     * @return element code
+     */
+    public static int encodeCharacter(char ch) {
+        return -3 - ch;
+    }
+
+    /**
+     * Decodes the character encoded by {@link #encodeCharacter(char)}
+     *
+     * @param code element code
+     * @return character
+     */
+    public static char decodeCharacter(int code) {
+        return (char) (-3 - code);
+    }
+
+    /**
+     * Returns the engine property
+     *
+     * @return engine
+     */
+    public TranslitEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns packed element code at the specified position
+     *
+     * @param pos element position
+     * @return element code
+     */
+    public int getCode(int pos) {
+        return buffer.get(pos < gapStart ? pos : pos + gapEnd - gapStart);
+    }
+
+    /**
+     * Returns amount of bytes reserved outside of the heap
+     *
+     * @return capacity in bytes
+     */
+    public long getCapacityInBytes() {
+        return buffer.capacity() * 4L;
+    }
+
+    @Override
+    public String getString(TranslitDictionary.Side side) throws TranslitDocumentException {
+        StringBuilder builder = new StringBuilder(getSize());
+        appendRange(builder, 0, getSize(), side, false);
+        return builder.toString();
+    }
+
+    @Override
+    public String getString(List<Element> elementList, TranslitDictionary.Side side) throws TranslitDocumentException {
+        StringBuildingContext context = new StringBuildingContext(side);
+        StringBuilder builder = new StringBuilder();
+        for (Element element : elementList) {
+            builder.append(element.getStringValue(context));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void writeString(int start, int end, TranslitDictionary.Side side, Appendable out)
+            throws TranslitDocumentException, IOException {
+        validateRange(start, end);
+        for (int i = start; i < end; i++) {
+            int code = getCode(i);
+            if (code >= 0) {
+                out.append(engine.getValue(code, side));
+            } else if (code != START_MARKER && code != END_MARKER) {
+                out.append(decodeCharacter(code));
+            }
+        }
+    }
+
+    @Override
+    public int writeString(int start, int end, TranslitDictionary.Side side, CharBuffer buffer)
+            throws TranslitDocumentException {
+        validateRange(start, end);
+        for (int i = start; i < end; i++) {
+            int code = getCode(i);
+            if (code >= 0) {
+                String value = engine.getValue(code, side);
+                if (value.length() > buffer.remaining()) {
+                    validateCapacity(value.length(), buffer);
+                    return i;
+                }
+                buffer.put(value);
+            } else if (code != START_MARKER && code != END_MARKER) {
+                if (!buffer.hasRemaining()) {
+                    validateCapacity(1, buffer);
+                    return i;
+                }
+                buffer.put(decodeCharacter(code));
+            }
+        }
+        return end;
+    }
+
+    @Override
+    public void setString(String string, TranslitDictionary.Side side) throws TranslitDocumentException {
+        clear();
+        insertStringAt(0, string, side);
+    }
+
+    @Override
+    public void insertStringAt(int index, String text, TranslitDictionary.Side side) throws TranslitDocumentException {
+        int[] codes = new int[text.length()];
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (isMarker(ch, TranslitDictionary.ExclusionMarker.START)) {
+                codes[i] = START_MARKER;
+            } else if (isMarker(ch, TranslitDictionary.ExclusionMarker.END)) {
+                codes[i] = END_MARKER;
+            } else {
+                int idx = engine.indexOfChar(ch, side);
+                codes[i] = idx != -1 ? idx : encodeCharacter(ch);
+            }
+        }
+        insertCodes(index, codes, codes.length);
+        modified();
+    }
+
+    @Override
+    public String getMarkedString(TranslitDictionary.Side side) throws TranslitDocumentException {
+        StringBuilder builder = new StringBuilder(getSize());
+        appendRange(builder, 0, getSize(), side, true);
+        return builder.toString();
+    }
+
+    @Override
+    public Element getElement(int pos) throws TranslitDocumentException {
+        validatePosition(pos);
+        return newElement(getCode(pos));
+    }
+
+    @Override
+    public TranslitDictionary getDictionary() {
+        return engine.getDictionary();
+    }
+
+    @Override
+    public Mutation insertAt(int index, String text, TranslitDictionary.Side side) throws TranslitDocumentException {
+        Mutation mutation = prepareInsert(index, text, side);
+        parseMutation(mutation);
+        applyMutation(mutation);
+        return mutation;
+    }
+
+    @Override
+    public Mutation prepareInsert(int index, String text, TranslitDictionary.Side side) throws TranslitDocumentException {
+        if (index > getSize() || index < 0) {
+            throw new TranslitDocumentException("Invalid index " + index);
+        }
+        int longestWord = getDictionary().getLongestWordLen(side);
+        Mutation mutation = new Mutation(index, text, side, getModificationCount());
+        mutation.setLeftShift(index);
+        while (mutation.getStringBuffer().length() < longestWord
+                && mutation.getLeftShift() > 0
+                && getCode(mutation.getLeftShift() - 1) >= 0) {
+            mutation.setLeftShift(mutation.getLeftShift() - 1);
+            int code = getCode(mutation.getLeftShift());
+            mutation.oldElements().add(0, newElement(code));
+            mutation.getStringBuffer().insert(0, engine.getValue(code, side));
+        }
+        addContext(mutation);
+        mutation.getStringBuffer().append(text);
+        return mutation;
+    }
+
+    @Override
+    public void parseMutation(Mutation mutation) {
+        int[] codes = parse(mutation.getStringBuffer(), mutation.getContext(), mutation.getSide());
+        for (int code : codes) {
+            mutation.newElements().add(newElement(code));
+        }
+        mutation.setOffset(mutation.getIndex());
+        if (mutation.newElements().size() - 1 < mutation.oldElements().size()) {
+            mutation.setOffset(mutation.getOffset() - (mutation.oldElements().size() - (mutation.newElements().size() - 1)));
+        }
+    }
+
+    @Override
+    public void applyMutation(Mutation mutation) throws TranslitDocumentException {
+        validateMutation(mutation);
+        removeElements(mutation.getLeftShift(), mutation.oldElements().size());
+        int[] codes = new int[mutation.newElements().size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = toCode(mutation.newElements().get(i));
+        }
+        insertCodes(mutation.getLeftShift(), codes, codes.length);
+        modified();
+    }
+
+    @Override
+    public void removeElements(int position, int amount) {
+        if (amount <= 0) return;
+        if (position < 0 || position + amount > getSize()) {
+            throw new IndexOutOfBoundsException("Invalid range (" + position + "," + (position + amount) + ")");
+        }
+        moveGap(position);
+        gapEnd += amount;
+        modified();
+    }
+
+    @Override
+    public boolean isTranslitAt(int idx) throws TranslitDocumentException {
+        validatePosition(idx);
+        return getCode(idx) >= 0;
+    }
+
+    @Override
+    public int getSize() {
+        return buffer.capacity() - (gapEnd - gapStart);
+    }
+
+    @Override
+    public int convertToElementIndex(int position, TranslitDictionary.Side side) {
+        int currentPosition = 0;
+        if (position == 0) return currentPosition;
+        int size = getSize();
+        for (int i = 0; i < size; i++) {
+            currentPosition += length(getCode(i), side, false);
+            if (currentPosition >= position) return i;
+        }
+        return size;
+    }
+
+    @Override
+    public int convertToTextPosition(int startIndex, int indexToConvert, TranslitDictionary.Side side) {
+        int currentPosition = 0;
+        for (int i = startIndex; i < indexToConvert; i++) {
+            currentPosition += length(getCode(i), side, false);
+        }
+        return currentPosition;
+    }
+
+    @Override
+    public void clear() {
+        gapStart = 0;
+        gapEnd = buffer.capacity();
+        modified();
+    }
+
+    @Override
+    public void rebind(TranslitDictionary dictionary, TranslitDictionary.Side side) throws TranslitDocumentException {
+        rebind(new TranslitEngine(dictionary), side);
+    }
+
+    /**
+     * Binds the document to the dictionary of the specified compiled {@see engine}, codes of unchanged pairs are
+     * remapped to the new indexes and only the ranges where a changed word matches the content are parsed again.
+     *
+     * @param engine translit engine
+     * @param side   content of the changed ranges is parsed from the specified side
+     */
+    public void rebind(TranslitEngine engine, TranslitDictionary.Side side) {
+        DictionaryDiff diff = new DictionaryDiff(getDictionary(), engine.getDictionary());
+        int size = getSize();
+        StringBuilder text = new StringBuilder();
+        int[] starts = new int[size + 1];
+        boolean[] dirty = new boolean[size];
+        boolean[] fixed = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            int code = getCode(i);
+            starts[i] = text.length();
+            if (code >= 0) {
+                text.append(this.engine.getValue(code, side));
+                dirty[i] = diff.remap(code) < 0;
+            } else if (code == START_MARKER || code == END_MARKER) {
+                fixed[i] = true;
+            } else {
+                text.append(decodeCharacter(code));
+            }
+        }
+        starts[size] = text.length();
+        List<int[]> ranges = diff.findChangedRanges(text, starts, dirty, fixed, side);
+        this.engine = engine;
+        moveGap(size);
+        for (int i = 0; i < size; i++) {
+            int code = buffer.get(i);
+            if (code >= 0 && !dirty[i]) buffer.put(i, diff.remap(code));
+        }
+        for (int r = ranges.size() - 1; r >= 0; r--) {
+            int[] range = ranges.get(r);
+            int[] codes = parse(text.subSequence(starts[range[0]], starts[range[1]]), side);
+            moveGap(range[1]);
+            gapStart = range[0];
+            insertCodes(range[0], codes, codes.length);
+        }
+        modified();
+    }
+
+    private int[] parse(CharSequence text, TranslitDictionary.Side side) {
+        return parse(text, 0, side);
+    }
+
+    private int[] parse(CharSequence text, int start, TranslitDictionary.Side side) {
+        final int[][] codes = {new int[text.length() - start]};
+        final int[] count = {0};
+        engine.parse(text, start, side, new TranslitEngine.TokenHandler() {
+            @Override
+            public void dictionaryToken(int index, int start, int end) {
+                codes[0][count[0]++] = index;
+            }
+
+            @Override
+            public void characterToken(char ch, int position) {
+                codes[0][count[0]++] = encodeCharacter(ch);
+            }
+
+            @Override
+            public void markerToken(TranslitDictionary.ExclusionMarker marker, int position) {
+                codes[0][count[0]++] = marker == TranslitDictionary.ExclusionMarker.START ? START_MARKER : END_MARKER;
+            }
+        });
+        if (count[0] == codes[0].length) return codes[0];
+        int[] result = new int[count[0]];
+        System.arraycopy(codes[0], 0, result, 0, count[0]);
+        return result;
+    }
+
+    private void appendRange(StringBuilder builder, int start, int end, TranslitDictionary.Side side, boolean addMarkers) {
+        boolean startMarker = false;
+        for (int i = start; i < end; i++) {
+            int code = getCode(i);
+            if (code == START_MARKER || code == END_MARKER) continue;
+            if (code >= 0) {
+                String value = engine.getValue(code, side);
+                if (addMarkers && startMarker && !value.isEmpty() && Character.isAlphabetic(value.charAt(0))) {
+                    startMarker = false;
+                    builder.append(getDictionary().getExclusionMarker(TranslitDictionary.ExclusionMarker.END));
+                }
+                builder.append(value);
+            } else {
+                char ch = decodeCharacter(code);
+                if (addMarkers && !startMarker && Character.isAlphabetic(ch)) {
+                    startMarker = true;
+                    builder.append(getDictionary().getExclusionMarker(TranslitDictionary.ExclusionMarker.START));
+                }
+                builder.append(ch);
+            }
+        }
+        if (startMarker) {
+            builder.append(getDictionary().getExclusionMarker(TranslitDictionary.ExclusionMarker.END));
+        }
+    }
+
+    private int length(int code, TranslitDictionary.Side side, boolean markersShowed) {
+        if (code >= 0) return engine.getValue(code, side).length();
+        if (code == START_MARKER || code == END_MARKER) return markersShowed ? 1 : 0;
+        return 1;
+    }
+
+    private boolean isMarker(char ch, TranslitDictionary.ExclusionMarker marker) {
+        String value = getDictionary().getExclusionMarker(marker);
+        return value != null && value.length() == 1 && value.charAt(0) == ch;
+    }
+
+    private Element newElement(int code) {
+        if (code >= 0) return new IndexElement(code);
+        if (code == START_MARKER) return new ExclusionMarkerElement(TranslitDictionary.ExclusionMarker.START);
+        if (code == END_MARKER) return new ExclusionMarkerElement(TranslitDictionary.ExclusionMarker.END);
+        return new CharacterElement(decodeCharacter(code));
+    }
+
+    private int toCode(Element element) throws TranslitDocumentException {
+        if (element instanceof IndexElement) return ((IndexElement) element).getIndex();
+        if (element instanceof CharacterElement) return encodeCharacter(((CharacterElement) element).getData());
+        if (element instanceof ExclusionMarkerElement) {
+            return ((ExclusionMarkerElement) element).getExclusionMarker() == TranslitDictionary.ExclusionMarker.START
+                    ? START_MARKER : END_MARKER;
+        }
+        throw new TranslitDocumentException("Unsupported element " + element);
+    }
+
+    private void insertCodes(int index, int[] codes, int length) {
+        ensureGap(length);
+        moveGap(index);
+        IntBuffer target = buffer.duplicate();
+        target.position(gapStart);
+        target.put(codes, 0, length);
+        gapStart += length;
+    }
+
+    private void ensureGap(int length) {
+        if (gapEnd - gapStart >= length) return;
+        int size = getSize();
+        int capacity = Math.max(buffer.capacity() * 2, size + length + INITIAL_CAPACITY);
+        IntBuffer newBuffer = allocate(capacity);
+        IntBuffer source = buffer.duplicate();
+        source.position(0).limit(gapStart);
+        newBuffer.put(source);
+        int tail = buffer.capacity() - gapEnd;
+        source = buffer.duplicate();
+        source.position(gapEnd).limit(buffer.capacity());
+        newBuffer.position(capacity - tail);
+        newBuffer.put(source);
+        buffer = newBuffer;
+        gapEnd = capacity - tail;
+    }
+
+    /**
+     * Moves the gap to the specified element position. Content is copied by chunks through a small heap array,
+     * so the copy is correct even when the source and the target ranges overlap.
+     */
+    private void moveGap(int position) {
+        int gap = gapEnd - gapStart;
+        if (position < gapStart) {
+            int end = gapStart;
+            while (end > position) {
+                int len = Math.min(COPY_CHUNK, end - position);
+                copy(end - len, end - len + gap, len);
+                end -= len;
+            }
+        } else if (position > gapStart) {
+            int start = gapEnd;
+            int last = position + gap;
+            while (start < last) {
+                int len = Math.min(COPY_CHUNK, last - start);
+                copy(start, start - gap, len);
+                start += len;
+            }
+        }
+        gapStart = position;
+        gapEnd = position + gap;
+    }
+
+    private void copy(int from, int to, int len) {
+        IntBuffer source = buffer.duplicate();
+        source.position(from);
+        source.get(chunk, 0, len);
+        IntBuffer target = buffer.duplicate();
+        target.position(to);
+        target.put(chunk, 0, len);
+    }
+
+    private static IntBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    private void validatePosition(int pos) throws TranslitDocumentException {
+        if (pos + 1 > getSize() || pos < 0)
+            throw new TranslitDocumentException(MessageFormat.format(ERR_INVALID_DATA_POS,
+                    new Object[]{pos, 0, getSize() > 0 ? getSize() - 1 : 0}));
+    }
+
+    public class IndexElement extends Element {
+
+        private final int index;
+
+        public IndexElement(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public String getStringValue(StringBuildingContext buildingContext) {
+            return engine.getValue(index, buildingContext.getSide());
+        }
+
+        @Override
+        public boolean isTransliteration() {
+            return true;
+        }
+    }
+
+    public class CharacterElement extends Element {
+
+        private final char data;
+
+        public CharacterElement(char data) {
+            this.data = data;
+        }
+
+        public char getData() {
+            return data;
+        }
+
+        @Override
+        public String getStringValue(StringBuildingContext stringBuildingContext) {
+            return String.valueOf(data);
+        }
+
+        @Override
+        public boolean isTransliteration() {
+            return false;
+        }
+    }
+
+    public class ExclusionMarkerElement extends Element {
+
+        private final TranslitDictionary.ExclusionMarker exclusionMarker;
+
+        public ExclusionMarkerElement(TranslitDictionary.ExclusionMarker exclusionMarker) {
+            this.exclusionMarker = exclusionMarker;
+        }
+
+        public TranslitDictionary.ExclusionMarker getExclusionMarker() {
+            return exclusionMarker;
+        }
+
+        @Override
+        public String getStringValue(StringBuildingContext stringBuildingContext) {
+            return !stringBuildingContext.isMarkersShowed() ? "" : getDictionary().getExclusionMarker(exclusionMarker);
+        }
+
+        @Override
+        public boolean isTransliteration() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.romppu.translit.document.impl;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.document.TranslitDocument;
+import org.romppu.translit.document.TranslitDocumentFactory;
+
+/**
+ * Creates instances of {@link OffHeapTranslitDocument}.
+ * To use it by default specify the <code>org.romppu.translit.document.TranslitDocumentFactory</code> system property.
+ */
+public class OffHeapTranslitDocumentFactory extends TranslitDocumentFactory {
+
+    @Override
+    public TranslitDocument newTranslitDocument(TranslitDictionary dictionary) {
+        return new OffHeapTranslitDocument(dictionary);
+    }
+}
@@ -0,0 +1,772 @@
+package org.romppu.translit.document.impl;
+
+import org.romppu.translit.TranslitDocumentException;
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.document.TranslitDocument;
+import org.romppu.translit.engine.TranslitEngine;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation of {@link TranslitDocument} whose content is a persistent rope. The elements are packed into int
+ * codes as by {@link OffHeapTranslitDocument} and kept in chunks of at most {@link #CHUNK_SIZE} codes, the chunks
+ * are the leaves of a balanced binary tree. The nodes of the tree are never changed: an insert or a removal builds
+ * a new path from the root to the changed chunks and shares all other nodes with the previous version.
+ * So {@link #snapshot()} is O(1), the snapshot keeps the content of the moment it was taken however the document
+ * is edited later, and an undo is a {@link #revert(PersistentTranslitDocument)} to an earlier snapshot.
+ * Every node caches its amount of elements and the length of its text on both sides, so the conversions between
+ * the element indexes and the text positions are O(log n).
+ * A document is edited by one thread, its snapshots may be read by any threads.
+ */
+public class PersistentTranslitDocument extends TranslitDocument {
+
+    public static final int CHUNK_SIZE = 64;
+
+    private static final String ERR_INVALID_DATA_POS = "Invalid position ({0}). Position must be in range [{1}-{2}]";
+
+    private volatile TranslitEngine engine;
+    private volatile Rope root;
+
+    /**
+     * Creates a new empty document with the specified {@see dictionary}
+     *
+     * @param dictionary translit dictionary
+     */
+    public PersistentTranslitDocument(TranslitDictionary dictionary) {
+        this(new TranslitEngine(dictionary));
+    }
+
+    /**
+     * Creates a new empty document which shares the specified compiled {@see engine}
+     *
+     * @param engine translit engine
+     */
+    public PersistentTranslitDocument(TranslitEngine engine) {
+        this(engine, null);
+    }
+
+    private PersistentTranslitDocument(TranslitEngine engine, Rope root) {
+        this.engine = engine;
+        this.root = root;
+    }
+
+    /**
+     * Parses the specified text and creates a new instance of the PersistentTranslitDocument
+     *
+     * @param engine translit engine
+     * @param text   to transliteration
+     * @param side   text will be transliterated from the specified side into an opposite side
+     * @return new instance of PersistentTranslitDocument
+     */
+    public static PersistentTranslitDocument create(TranslitEngine engine, CharSequence text,
+                                                    TranslitDictionary.Side side) {
+        PersistentTranslitDocument doc = new PersistentTranslitDocument(engine);
+        doc.root = Rope.build(engine, doc.parse(text, side));
+        doc.modified();
+        return doc;
+    }
+
+    /**
+     * Returns a document with the current content, the content is shared and is not copied. Later changes of this
+     * document are not visible in the snapshot and vice versa.
+     *
+     * @return snapshot
+     */
+    public PersistentTranslitDocument snapshot() {
+        return new PersistentTranslitDocument(engine, root);
+    }
+
+    /**
+     * Restores the content of the specified {@see snapshot} of this document
+     *
+     * @param snapshot snapshot taken earlier by {@link #snapshot()}
+     */
+    public void revert(PersistentTranslitDocument snapshot) {
+        engine = snapshot.engine;
+        root = snapshot.root;
+        modified();
+    }
+
+    /**
+     * Returns the engine property
+     *
+     * @return engine
+     */
+    public TranslitEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns packed element code at the specified position
+     *
+     * @param pos element position
+     * @return element code, see {@link OffHeapTranslitDocument}
+     */
+    public int getCode(int pos) {
+        Rope node = root;
+        while (node.codes == null) {
+            if (pos < node.left.size) {
+                node = node.left;
+            } else {
+                pos -= node.left.size;
+                node = node.right;
+            }
+        }
+        return node.codes[pos];
+    }
+
+    @Override
+    public String getString(TranslitDictionary.Side side) throws TranslitDocumentException {
+        StringBuilder builder = new StringBuilder(getSize());
+        appendRange(builder, 0, getSize(), side, false);
+        return builder.toString();
+    }
+
+    @Override
+    public String getString(List<Element> elementList, TranslitDictionary.Side side) throws TranslitDocumentException {
+        StringBuildingContext context = new StringBuildingContext(side);
+        StringBuilder builder = new StringBuilder();
+        for (Element element : elementList) {
+            builder.append(element.getStringValue(context));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void writeString(int start, int end, TranslitDictionary.Side side, Appendable out)
+            throws TranslitDocumentException, IOException {
+        validateRange(start, end);
+        TranslitEngine engine = this.engine;
+        List<Rope> leaves = new ArrayList<Rope>();
+        int offset = collectLeaves(root, start, end, 0, leaves);
+        for (Rope leaf : leaves) {
+            int from = Math.max(start - offset, 0);
+            int to = Math.min(end - offset, leaf.size);
+            for (int i = from; i < to; i++) {
+                int code = leaf.codes[i];
+                if (code >= 0) {
+                    out.append(engine.getValue(code, side));
+                } else if (code != OffHeapTranslitDocument.START_MARKER && code != OffHeapTranslitDocument.END_MARKER) {
+                    out.append(OffHeapTranslitDocument.decodeCharacter(code));
+                }
+            }
+            offset += leaf.size;
+        }
+    }
+
+    @Override
+    public int writeString(int start, int end, TranslitDictionary.Side side, CharBuffer buffer)
+            throws TranslitDocumentException {
+        validateRange(start, end);
+        for (int i = start; i < end; i++) {
+            int code = getCode(i);
+            if (code >= 0) {
+                String value = engine.getValue(code, side);
+                if (value.length() > buffer.remaining()) {
+                    validateCapacity(value.length(), buffer);
+                    return i;
+                }
+                buffer.put(value);
+            } else if (code != OffHeapTranslitDocument.START_MARKER && code != OffHeapTranslitDocument.END_MARKER) {
+                if (!buffer.hasRemaining()) {
+                    validateCapacity(1, buffer);
+                    return i;
+                }
+                buffer.put(OffHeapTranslitDocument.decodeCharacter(code));
+            }
+        }
+        return end;
+    }
+
+    @Override
+    public void setString(String string, TranslitDictionary.Side side) throws TranslitDocumentException {
+        clear();
+        insertStringAt(0, string, side);
+    }
+
+    @Override
+    public void insertStringAt(int index, String text, TranslitDictionary.Side side) throws TranslitDocumentException {
+        int[] codes = new int[text.length()];
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (isMarker(ch, TranslitDictionary.ExclusionMarker.START)) {
+                codes[i] = OffHeapTranslitDocument.START_MARKER;
+            } else if (isMarker(ch, TranslitDictionary.ExclusionMarker.END)) {
+                codes[i] = OffHeapTranslitDocument.END_MARKER;
+            } else {
+                int idx = engine.indexOfChar(ch, side);
+                codes[i] = idx != -1 ? idx : OffHeapTranslitDocument.encodeCharacter(ch);
+            }
+        }
+        root = replace(root, index, 0, codes);
+        modified();
+    }
+
+    @Override
+    public String getMarkedString(TranslitDictionary.Side side) throws TranslitDocumentException {
+        StringBuilder builder = new StringBuilder(getSize());
+        appendRange(builder, 0, getSize(), side, true);
+        return builder.toString();
+    }
+
+    @Override
+    public Element getElement(int pos) throws TranslitDocumentException {
+        validatePosition(pos);
+        return newElement(getCode(pos));
+    }
+
+    @Override
+    public TranslitDictionary getDictionary() {
+        return engine.getDictionary();
+    }
+
+    @Override
+    public Mutation insertAt(int index, String text, TranslitDictionary.Side side) throws TranslitDocumentException {
+        Mutation mutation = prepareInsert(index, text, side);
+        parseMutation(mutation);
+        applyMutation(mutation);
+        return mutation;
+    }
+
+    @Override
+    public Mutation prepareInsert(int index, String text, TranslitDictionary.Side side) throws TranslitDocumentException {
+        if (index > getSize() || index < 0) {
+            throw new TranslitDocumentException("Invalid index " + index);
+        }
+        int longestWord = getDictionary().getLongestWordLen(side);
+        Mutation mutation = new Mutation(index, text, side, getModificationCount());
+        mutation.setLeftShift(index);
+        while (mutation.getStringBuffer().length() < longestWord
+                && mutation.getLeftShift() > 0
+                && getCode(mutation.getLeftShift() - 1) >= 0) {
+            mutation.setLeftShift(mutation.getLeftShift() - 1);
+            int code = getCode(mutation.getLeftShift());
+            mutation.oldElements().add(0, newElement(code));
+            mutation.getStringBuffer().insert(0, engine.getValue(code, side));
+        }
+        addContext(mutation);
+        mutation.getStringBuffer().append(text);
+        return mutation;
+    }
+
+    @Override
+    public void parseMutation(Mutation mutation) {
+        int[] codes = parse(mutation.getStringBuffer(), mutation.getContext(), mutation.getSide());
+        for (int code : codes) {
+            mutation.newElements().add(newElement(code));
+        }
+        mutation.setOffset(mutation.getIndex());
+        if (mutation.newElements().size() - 1 < mutation.oldElements().size()) {
+            mutation.setOffset(mutation.getOffset() - (mutation.oldElements().size() - (mutation.newElements().size() - 1)));
+        }
+    }
+
+    @Override
+    public void applyMutation(Mutation mutation) throws TranslitDocumentException {
+        validateMutation(mutation);
+        int[] codes = new int[mutation.newElements().size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = toCode(mutation.newElements().get(i));
+        }
+        root = replace(root, mutation.getLeftShift(), mutation.oldElements().size(), codes);
+        modified();
+    }
+
+    @Override
+    public void removeElements(int position, int amount) {
+        if (amount <= 0) return;
+        if (position < 0 || position + amount > getSize()) {
+            throw new IndexOutOfBoundsException("Invalid range (" + position + "," + (position + amount) + ")");
+        }
+        root = replace(root, position, amount, new int[0]);
+        modified();
+    }
+
+    @Override
+    public boolean isTranslitAt(int idx) throws TranslitDocumentException {
+        validatePosition(idx);
+        return getCode(idx) >= 0;
+    }
+
+    @Override
+    public int getSize() {
+        Rope node = root;
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Converts the specified position to the element index with the specified side, the cached lengths of the
+     * nodes lead the search, so it is O(log n)
+     */
+    @Override
+    public int convertToElementIndex(int position, TranslitDictionary.Side side) {
+        if (position == 0) return 0;
+        Rope node = root;
+        if (node == null || node.lengths[side.ordinal()] < position) return getSize();
+        TranslitEngine engine = this.engine;
+        int index = 0;
+        while (node.codes == null) {
+            int leftLength = node.left.lengths[side.ordinal()];
+            if (leftLength >= position) {
+                node = node.left;
+            } else {
+                position -= leftLength;
+                index += node.left.size;
+                node = node.right;
+            }
+        }
+        int currentPosition = 0;
+        for (int i = 0; i < node.size; i++) {
+            currentPosition += length(engine, node.codes[i], side);
+            if (currentPosition >= position) return index + i;
+        }
+        return index + node.size;
+    }
+
+    @Override
+    public int convertToTextPosition(int startIndex, int indexToConvert, TranslitDictionary.Side side) {
+        if (indexToConvert <= startIndex) return 0;
+        return prefixLength(indexToConvert, side) - prefixLength(startIndex, side);
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        modified();
+    }
+
+    @Override
+    public void rebind(TranslitDictionary dictionary, TranslitDictionary.Side side) throws TranslitDocumentException {
+        rebind(new TranslitEngine(dictionary), side);
+    }
+
+    /**
+     * Binds the document to the dictionary of the specified compiled {@see engine}, codes of unchanged pairs are
+     * remapped to the new indexes and only the ranges where a changed word matches the content are parsed again.
+     * The cached lengths depend on the dictionary, so the whole tree is built again, the snapshots keep the old one.
+     *
+     * @param engine translit engine
+     * @param side   content of the changed ranges is parsed from the specified side
+     */
+    public void rebind(TranslitEngine engine, TranslitDictionary.Side side) {
+        DictionaryDiff diff = new DictionaryDiff(getDictionary(), engine.getDictionary());
+        int size = getSize();
+        int[] codes = new int[size];
+        for (int i = 0; i < size; i++) {
+            codes[i] = getCode(i);
+        }
+        StringBuilder text = new StringBuilder();
+        int[] starts = new int[size + 1];
+        boolean[] dirty = new boolean[size];
+        boolean[] fixed = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            int code = codes[i];
+            starts[i] = text.length();
+            if (code >= 0) {
+                text.append(this.engine.getValue(code, side));
+                dirty[i] = diff.remap(code) < 0;
+            } else if (code == OffHeapTranslitDocument.START_MARKER || code == OffHeapTranslitDocument.END_MARKER) {
+                fixed[i] = true;
+            } else {
+                text.append(OffHeapTranslitDocument.decodeCharacter(code));
+            }
+        }
+        starts[size] = text.length();
+        List<int[]> ranges = diff.findChangedRanges(text, starts, dirty, fixed, side);
+        this.engine = engine;
+        int[] rebound = new int[size + text.length()];
+        int count = 0;
+        int pos = 0;
+        for (int[] range : ranges) {
+            for (; pos < range[0]; pos++) {
+                rebound[count++] = codes[pos] >= 0 ? diff.remap(codes[pos]) : codes[pos];
+            }
+            int[] parsed = parse(text.subSequence(starts[range[0]], starts[range[1]]), side);
+            System.arraycopy(parsed, 0, rebound, count, parsed.length);
+            count += parsed.length;
+            pos = range[1];
+        }
+        for (; pos < size; pos++) {
+            rebound[count++] = codes[pos] >= 0 ? diff.remap(codes[pos]) : codes[pos];
+        }
+        int[] result = new int[count];
+        System.arraycopy(rebound, 0, result, 0, count);
+        root = Rope.build(engine, result);
+        modified();
+    }
+
+    /**
+     * Returns the depth of the tree, it grows as a logarithm of the amount of chunks
+     *
+     * @return height of the root
+     */
+    public int getHeight() {
+        Rope node = root;
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Replaces the specified {@see amount} of elements at the specified {@see position} with the specified
+     * {@see codes}, the nodes outside of the path to the changed range are shared
+     */
+    private Rope replace(Rope node, int position, int amount, int[] codes) {
+        TranslitEngine engine = this.engine;
+        Rope[] head = Rope.split(engine, node, position);
+        Rope[] tail = Rope.split(engine, head[1], amount);
+        return Rope.join(engine, Rope.join(engine, head[0], Rope.build(engine, codes)), tail[1]);
+    }
+
+    private int prefixLength(int index, TranslitDictionary.Side side) {
+        Rope node = root;
+        if (node == null) return 0;
+        TranslitEngine engine = this.engine;
+        int toReturn = 0;
+        while (node.codes == null) {
+            if (index < node.left.size) {
+                node = node.left;
+            } else {
+                index -= node.left.size;
+                toReturn += node.left.lengths[side.ordinal()];
+                node = node.right;
+            }
+        }
+        for (int i = 0; i < index && i < node.size; i++) {
+            toReturn += length(engine, node.codes[i], side);
+        }
+        return toReturn;
+    }
+
+    /**
+     * Collects the chunks which contain elements of the specified range in the text order
+     *
+     * @return index of the first element of the first collected chunk
+     */
+    private static int collectLeaves(Rope node, int start, int end, int offset, List<Rope> leaves) {
+        if (node == null || start >= end) return offset;
+        if (node.codes != null) {
+            leaves.add(node);
+            return offset;
+        }
+        int leftEnd = offset + node.left.size;
+        int first = offset;
+        if (start < leftEnd) {
+            first = collectLeaves(node.left, start, end, offset, leaves);
+        }
+        if (end > leftEnd) {
+            int right = collectLeaves(node.right, start, end, leftEnd, leaves);
+            if (start >= leftEnd) first = right;
+        }
+        return first;
+    }
+
+    private int[] parse(CharSequence text, TranslitDictionary.Side side) {
+        return parse(text, 0, side);
+    }
+
+    private int[] parse(CharSequence text, int start, TranslitDictionary.Side side) {
+        final int[][] codes = {new int[text.length() - start]};
+        final int[] count = {0};
+        engine.parse(text, start, side, new TranslitEngine.TokenHandler() {
+            @Override
+            public void dictionaryToken(int index, int start, int end) {
+                codes[0][count[0]++] = index;
+            }
+
+            @Override
+            public void characterToken(char ch, int position) {
+                codes[0][count[0]++] = OffHeapTranslitDocument.encodeCharacter(ch);
+            }
+
+            @Override
+            public void markerToken(TranslitDictionary.ExclusionMarker marker, int position) {
+                codes[0][count[0]++] = marker == TranslitDictionary.ExclusionMarker.START
+                        ? OffHeapTranslitDocument.START_MARKER : OffHeapTranslitDocument.END_MARKER;
+            }
+        });
+        if (count[0] == codes[0].length) return codes[0];
+        int[] result = new int[count[0]];
+        System.arraycopy(codes[0], 0, result, 0, count[0]);
+        return result;
+    }
+
+    private void appendRange(StringBuilder builder, int start, int end, TranslitDictionary.Side side, boolean addMarkers) {
+        TranslitEngine engine = this.engine;
+        List<Rope> leaves = new ArrayList<Rope>();
+        int offset = collectLeaves(root, start, end, 0, leaves);
+        boolean startMarker = false;
+        for (Rope leaf : leaves) {
+            int from = Math.max(start - offset, 0);
+            int to = Math.min(end - offset, leaf.size);
+            for (int i = from; i < to; i++) {
+                int code = leaf.codes[i];
+                if (code == OffHeapTranslitDocument.START_MARKER || code == OffHeapTranslitDocument.END_MARKER) continue;
+                if (code >= 0) {
+                    String value = engine.getValue(code, side);
+                    if (addMarkers && startMarker && !value.isEmpty() && Character.isAlphabetic(value.charAt(0))) {
+                        startMarker = false;
+                        builder.append(engine.getDictionary().getExclusionMarker(TranslitDictionary.ExclusionMarker.END));
+                    }
+                    builder.append(value);
+                } else {
+                    char ch = OffHeapTranslitDocument.decodeCharacter(code);
+                    if (addMarkers && !startMarker && Character.isAlphabetic(ch)) {
+                        startMarker = true;
+                        builder.append(engine.getDictionary().getExclusionMarker(TranslitDictionary.ExclusionMarker.START));
+                    }
+                    builder.append(ch);
+                }
+            }
+            offset += leaf.size;
+        }
+        if (startMarker) {
+            builder.append(engine.getDictionary().getExclusionMarker(TranslitDictionary.ExclusionMarker.END));
+        }
+    }
+
+    private static int length(TranslitEngine engine, int code, TranslitDictionary.Side side) {
+        if (code >= 0) return engine.getValue(code, side).length();
+        if (code == OffHeapTranslitDocument.START_MARKER || code == OffHeapTranslitDocument.END_MARKER) return 0;
+        return 1;
+    }
+
+    private boolean isMarker(char ch, TranslitDictionary.ExclusionMarker marker) {
+        String value = getDictionary().getExclusionMarker(marker);
+        return value != null && value.length() == 1 && value.charAt(0) == ch;
+    }
+
+    private Element newElement(int code) {
+        if (code >= 0) return new IndexElement(code);
+        if (code == OffHeapTranslitDocument.START_MARKER) {
+            return new ExclusionMarkerElement(TranslitDictionary.ExclusionMarker.START);
+        }
+        if (code == OffHeapTranslitDocument.END_MARKER) {
+            return new ExclusionMarkerElement(TranslitDictionary.ExclusionMarker.END);
+        }
+        return new CharacterElement(OffHeapTranslitDocument.decodeCharacter(code));
+    }
+
+    private int toCode(Element element) throws TranslitDocumentException {
+        if (element instanceof IndexElement) return ((IndexElement) element).getIndex();
+        if (element instanceof CharacterElement) {
+            return OffHeapTranslitDocument.encodeCharacter(((CharacterElement) element).getData());
+        }
+        if (element instanceof ExclusionMarkerElement) {
+            return ((ExclusionMarkerElement) element).getExclusionMarker() == TranslitDictionary.ExclusionMarker.START
+                    ? OffHeapTranslitDocument.START_MARKER : OffHeapTranslitDocument.END_MARKER;
+        }
+        throw new TranslitDocumentException("Unsupported element " + element);
+    }
+
+    private void validatePosition(int pos) throws TranslitDocumentException {
+        if (pos + 1 > getSize() || pos < 0)
+            throw new TranslitDocumentException(MessageFormat.format(ERR_INVALID_DATA_POS,
+                    new Object[]{pos, 0, getSize() > 0 ? getSize() - 1 : 0}));
+    }
+
+    /**
+     * Immutable node of the rope: a chunk of codes or a branch of two nodes whose heights differ by one at most.
+     * An empty rope is null.
+     */
+    private static final class Rope {
+        private final int[] codes;
+        private final Rope left;
+        private final Rope right;
+        private final int size;
+        private final int height;
+        private final int[] lengths = new int[TranslitDictionary.Side.values().length];
+
+        private Rope(TranslitEngine engine, int[] codes) {
+            this.codes = codes;
+            this.left = null;
+            this.right = null;
+            this.size = codes.length;
+            this.height = 0;
+            for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+                int length = 0;
+                for (int code : codes) {
+                    length += length(engine, code, side);
+                }
+                lengths[side.ordinal()] = length;
+            }
+        }
+
+        private Rope(Rope left, Rope right) {
+            this.codes = null;
+            this.left = left;
+            this.right = right;
+            this.size = left.size + right.size;
+            this.height = Math.max(left.height, right.height) + 1;
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = left.lengths[i] + right.lengths[i];
+            }
+        }
+
+        /**
+         * Builds a balanced rope of the specified {@see codes}
+         */
+        private static Rope build(TranslitEngine engine, int[] codes) {
+            if (codes.length == 0) return null;
+            List<Rope> level = new ArrayList<Rope>();
+            for (int from = 0; from < codes.length; from += CHUNK_SIZE) {
+                int[] chunk = new int[Math.min(CHUNK_SIZE, codes.length - from)];
+                System.arraycopy(codes, from, chunk, 0, chunk.length);
+                level.add(new Rope(engine, chunk));
+            }
+            while (level.size() > 1) {
+                List<Rope> next = new ArrayList<Rope>((level.size() + 1) / 2);
+                for (int i = 0; i + 1 < level.size(); i += 2) {
+                    next.add(new Rope(level.get(i), level.get(i + 1)));
+                }
+                if (level.size() % 2 == 1) {
+                    Rope last = level.get(level.size() - 1);
+                    next.add(next.isEmpty() ? last : join(engine, next.remove(next.size() - 1), last));
+                }
+                level = next;
+            }
+            return level.get(0);
+        }
+
+        /**
+         * Splits the specified {@see node} before the specified {@see index}
+         *
+         * @return ropes of the elements before and after the index
+         */
+        private static Rope[] split(TranslitEngine engine, Rope node, int index) {
+            if (node == null) return new Rope[]{null, null};
+            if (index <= 0) return new Rope[]{null, node};
+            if (index >= node.size) return new Rope[]{node, null};
+            if (node.codes != null) {
+                int[] head = new int[index];
+                int[] tail = new int[node.size - index];
+                System.arraycopy(node.codes, 0, head, 0, head.length);
+                System.arraycopy(node.codes, index, tail, 0, tail.length);
+                return new Rope[]{new Rope(engine, head), new Rope(engine, tail)};
+            }
+            if (index <= node.left.size) {
+                Rope[] parts = split(engine, node.left, index);
+                return new Rope[]{parts[0], join(engine, parts[1], node.right)};
+            }
+            Rope[] parts = split(engine, node.right, index - node.left.size);
+            return new Rope[]{join(engine, node.left, parts[0]), parts[1]};
+        }
+
+        /**
+         * Concatenates the specified ropes keeping the tree balanced, two small adjacent chunks are merged
+         */
+        private static Rope join(TranslitEngine engine, Rope left, Rope right) {
+            if (left == null) return right;
+            if (right == null) return left;
+            if (left.height > right.height + 1) {
+                return balance(engine, left.left, join(engine, left.right, right));
+            }
+            if (right.height > left.height + 1) {
+                return balance(engine, join(engine, left, right.left), right.right);
+            }
+            return branch(engine, left, right);
+        }
+
+        private static Rope branch(TranslitEngine engine, Rope left, Rope right) {
+            if (left.codes != null && right.codes != null && left.size + right.size <= CHUNK_SIZE) {
+                int[] codes = new int[left.size + right.size];
+                System.arraycopy(left.codes, 0, codes, 0, left.size);
+                System.arraycopy(right.codes, 0, codes, left.size, right.size);
+                return new Rope(engine, codes);
+            }
+            return new Rope(left, right);
+        }
+
+        /**
+         * Restores the balance of two ropes whose heights differ by two at most by a single or a double rotation
+         */
+        private static Rope balance(TranslitEngine engine, Rope left, Rope right) {
+            if (left.height > right.height + 1) {
+                if (left.left.height >= left.right.height) {
+                    return branch(engine, left.left, branch(engine, left.right, right));
+                }
+                return branch(engine, branch(engine, left.left, left.right.left),
+                        branch(engine, left.right.right, right));
+            }
+            if (right.height > left.height + 1) {
+                if (right.right.height >= right.left.height) {
+                    return branch(engine, branch(engine, left, right.left), right.right);
+                }
+                return branch(engine, branch(engine, left, right.left.left),
+                        branch(engine, right.left.right, right.right));
+            }
+            return branch(engine, left, right);
+        }
+    }
+
+    public class IndexElement extends Element {
+
+        private final int index;
+
+        public IndexElement(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public String getStringValue(StringBuildingContext buildingContext) {
+            return engine.getValue(index, buildingContext.getSide());
+        }
+
+        @Override
+        public boolean isTransliteration() {
+            return true;
+        }
+    }
+
+    public class CharacterElement extends Element {
+
+        private final char data;
+
+        public CharacterElement(char data) {
+            this.data = data;
+        }
+
+        public char getData() {
+            return data;
+        }
+
+        @Override
+        public String getStringValue(StringBuildingContext stringBuildingContext) {
+            return String.valueOf(data);
+        }
+
+        @Override
+        public boolean isTransliteration() {
+            return false;
+        }
+    }
+
+    public class ExclusionMarkerElement extends Element {
+
+        private final TranslitDictionary.ExclusionMarker exclusionMarker;
+
+        public ExclusionMarkerElement(TranslitDictionary.ExclusionMarker exclusionMarker) {
+            this.exclusionMarker = exclusionMarker;
+        }
+
+        public TranslitDictionary.ExclusionMarker getExclusionMarker() {
+            return exclusionMarker;
+        }
+
+        @Override
+        public String getStringValue(StringBuildingContext stringBuildingContext) {
+            return !stringBuildingContext.isMarkersShowed() ? "" : getDictionary().getExclusionMarker(exclusionMarker);
+        }
+
+        @Override
+        public boolean isTransliteration() {
+            return false;
+        }
+    }
+}
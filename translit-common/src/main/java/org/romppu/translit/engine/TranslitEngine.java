@@ -0,0 +1,548 @@
+package org.romppu.translit.engine;
+
+import org.romppu.translit.dictionary.ContextTranslitDictionary;
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.engine.impl.ContextTranslitMatcher;
+import org.romppu.translit.engine.impl.TrieTranslitMatcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The TranslitEngine transliterates plain text in both directions without building a
+ * {@link org.romppu.translit.document.TranslitDocument}.
+ * Both sides of the dictionary are compiled once when the engine is created, so transliteration from the LEFT side
+ * and from the RIGHT side costs the same. The engine produces exactly the same output as
+ * {@link org.romppu.translit.document.impl.DefaultTranslitDocument} with the default match selection strategy.
+ * The engine is immutable and may be shared by many threads, later changes of the dictionary are not visible to it.
+ */
+public class TranslitEngine {
+
+    private final TranslitDictionary dictionary;
+    private final TranslitMatcher matcher;
+    private final String[][] values;
+    private final char[][] singleChars;
+    private final int[][] singleCharIndexes;
+    private final boolean[][] ambiguous;
+    private final int[] longestWordLen;
+    private final List<Map<String, List<String>>> opposites = new ArrayList<Map<String, List<String>>>();
+    private final int markerStart;
+    private final int markerEnd;
+    private final TranslitProfiler profiler;
+
+    /**
+     * Compiles the specified {@see dictionary} into a new engine, see {@link #compileMatcher(TranslitDictionary)}
+     *
+     * @param dictionary translit dictionary
+     */
+    public TranslitEngine(TranslitDictionary dictionary) {
+        this(compileMatcher(dictionary));
+    }
+
+    /**
+     * Creates a new engine which uses the specified {@see matcher} for the match step
+     *
+     * @param matcher compiled matcher
+     */
+    public TranslitEngine(TranslitMatcher matcher) {
+        this(matcher, null);
+    }
+
+    /**
+     * Creates a new engine in profiling mode: every matched pair and every character which is not matched by any
+     * word is counted by the specified {@see profiler}
+     *
+     * @param matcher  compiled matcher
+     * @param profiler receives the hits, null turns the profiling off
+     */
+    public TranslitEngine(TranslitMatcher matcher, TranslitProfiler profiler) {
+        this.matcher = matcher;
+        this.profiler = profiler;
+        this.dictionary = matcher.getDictionary();
+        int sides = TranslitDictionary.Side.values().length;
+        values = new String[sides][dictionary.getSize()];
+        singleChars = new char[sides][];
+        singleCharIndexes = new int[sides][];
+        ambiguous = new boolean[sides][dictionary.getSize()];
+        longestWordLen = new int[sides];
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            for (int i = 0; i < dictionary.getSize(); i++) {
+                String value = dictionary.getValueAt(i, side);
+                values[side.ordinal()][i] = value;
+                longestWordLen[side.ordinal()] = Math.max(longestWordLen[side.ordinal()], value.length());
+            }
+        }
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            compileSingleChars(side);
+            compileOpposites(side);
+        }
+        markerStart = markerChar(dictionary.getExclusionMarker(TranslitDictionary.ExclusionMarker.START));
+        markerEnd = markerChar(dictionary.getExclusionMarker(TranslitDictionary.ExclusionMarker.END));
+    }
+
+    /**
+     * Returns the default matcher of the specified {@see dictionary}: the matcher of a dictionary which provides one
+     * (see {@link TranslitMatcher.Provider}) is used as is, a dictionary with conditions is compiled into
+     * the {@link ContextTranslitMatcher}, any other dictionary into the {@link TrieTranslitMatcher}
+     *
+     * @param dictionary translit dictionary
+     * @return matcher
+     */
+    public static TranslitMatcher compileMatcher(TranslitDictionary dictionary) {
+        if (dictionary instanceof TranslitMatcher.Provider) {
+            return ((TranslitMatcher.Provider) dictionary).getMatcher();
+        }
+        if (dictionary instanceof ContextTranslitDictionary && ((ContextTranslitDictionary) dictionary).hasConditions()) {
+            return new ContextTranslitMatcher((ContextTranslitDictionary) dictionary);
+        }
+        return new TrieTranslitMatcher(dictionary);
+    }
+
+    /**
+     * Returns the dictionary property
+     *
+     * @return dictionary
+     */
+    public TranslitDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns the profiler of the engine
+     *
+     * @return profiler or null if the engine is not in profiling mode
+     */
+    public TranslitProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Returns the matcher used by the engine
+     *
+     * @return matcher
+     */
+    public TranslitMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Returns the dictionary value at the specified index from the specified side
+     *
+     * @param index dictionary index
+     * @param side  LEFT or RIGHT
+     * @return value
+     */
+    public String getValue(int index, TranslitDictionary.Side side) {
+        return values[side.ordinal()][index];
+    }
+
+    /**
+     * Splits the specified {@see text} into tokens and passes them to the specified {@see handler}
+     *
+     * @param text    text to parse
+     * @param side    text will be transliterated from the specified side into an opposite side
+     * @param handler receives tokens in the text order
+     */
+    public void parse(CharSequence text, TranslitDictionary.Side side, TokenHandler handler) {
+        parse(text, 0, side, handler);
+    }
+
+    /**
+     * Splits the specified {@see text} from the specified {@see start} into tokens and passes them to the specified
+     * {@see handler}, the characters before the start are not parsed, they are only the context of the conditions
+     *
+     * @param text    text to parse
+     * @param start   position of the first parsed character
+     * @param side    text will be transliterated from the specified side into an opposite side
+     * @param handler receives tokens in the text order, the positions are relative to the beginning of the text
+     */
+    public void parse(CharSequence text, int start, TranslitDictionary.Side side, TokenHandler handler) {
+        String[] sideValues = values[side.ordinal()];
+        int position = start;
+        while (position < text.length()) {
+            int idx = matcher.match(text, position, side);
+            if (idx >= 0) {
+                if (profiler != null) profiler.dictionaryHit(idx, side);
+                int end = position + sideValues[idx].length();
+                handler.dictionaryToken(idx, position, end);
+                position = end;
+                continue;
+            }
+            char ch = text.charAt(position);
+            if (profiler != null && ch != markerStart && ch != markerEnd) profiler.characterHit(ch, side);
+            if (ch == markerStart) {
+                handler.markerToken(TranslitDictionary.ExclusionMarker.START, position);
+            } else if (ch == markerEnd) {
+                handler.markerToken(TranslitDictionary.ExclusionMarker.END, position);
+            } else {
+                idx = indexOfChar(ch, side.invert());
+                if (idx >= 0) {
+                    handler.dictionaryToken(idx, position, position + 1);
+                } else {
+                    handler.characterToken(ch, position);
+                }
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Transliterates the specified {@see text}
+     *
+     * @param text to transliteration
+     * @param side text will be transliterated from the specified side into an opposite side
+     * @return transliterated text
+     */
+    public String transliterate(CharSequence text, TranslitDictionary.Side side) {
+        StringBuilder builder = new StringBuilder(text.length() + 16);
+        try {
+            transliterate(text, side, builder);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Transliterates the specified {@see text} and appends result to the specified {@see out}
+     *
+     * @param text to transliteration
+     * @param side text will be transliterated from the specified side into an opposite side
+     * @param out  receives transliterated text
+     * @throws IOException if {@see out} fails
+     */
+    public void transliterate(CharSequence text, TranslitDictionary.Side side, Appendable out) throws IOException {
+        transliterate(text, text.length(), side, out);
+    }
+
+    /**
+     * Transliterates parts of the specified {@see text} which start before the specified {@see limit} and
+     * appends result to the specified {@see out}. It is used to transliterate a text which comes by chunks: the
+     * result is the same as for the whole text if at least {@link #getLongestWordLen} characters follow the limit.
+     *
+     * @param text  to transliteration
+     * @param limit parts which start at this position or later are not processed
+     * @param side  text will be transliterated from the specified side into an opposite side
+     * @param out   receives transliterated text
+     * @return position of the first character which is not processed
+     * @throws IOException if {@see out} fails
+     */
+    public int transliterate(CharSequence text, int limit, TranslitDictionary.Side side, Appendable out) throws IOException {
+        return transliterate(text, 0, limit, side, out);
+    }
+
+    /**
+     * Transliterates parts of the specified {@see text} which start at the specified {@see start} or later and before
+     * the specified {@see limit}, the characters before the start are only the context of the conditions (see
+     * {@link ContextTranslitDictionary}). The result is the same as for the whole text if the character which
+     * precedes the start and at least {@link #getLongestWordLen} + 1 characters after the limit are present.
+     *
+     * @param text  to transliteration
+     * @param start position of the first character to process
+     * @param limit parts which start at this position or later are not processed
+     * @param side  text will be transliterated from the specified side into an opposite side
+     * @param out   receives transliterated text
+     * @return position of the first character which is not processed
+     * @throws IOException if {@see out} fails
+     */
+    public int transliterate(CharSequence text, int start, int limit, TranslitDictionary.Side side, Appendable out) throws IOException {
+        return transliterate(text, start, limit, side, out, null);
+    }
+
+    /**
+     * Transliterates the specified {@see text}, appends result to the specified {@see out} and returns the map
+     * between the positions of the text and the positions of the result, e.g. to highlight the hits of a search
+     * in the transliterated text within the original one
+     *
+     * @param text to transliteration
+     * @param side text will be transliterated from the specified side into an opposite side
+     * @param out  receives transliterated text
+     * @return offset map, the target positions are relative to the length of {@see out} before the call
+     * @throws IOException if {@see out} fails
+     */
+    public TranslitOffsetMap transliterateWithOffsets(CharSequence text, TranslitDictionary.Side side, Appendable out)
+            throws IOException {
+        TranslitOffsetMap.Builder offsets = new TranslitOffsetMap.Builder();
+        transliterate(text, 0, text.length(), side, out, offsets);
+        return offsets.build();
+    }
+
+    private int transliterate(CharSequence text, int start, int limit, TranslitDictionary.Side side, Appendable out,
+                              TranslitOffsetMap.Builder offsets) throws IOException {
+        String[] targetValues = values[side.invert().ordinal()];
+        String[] sideValues = values[side.ordinal()];
+        int position = start;
+        while (position < limit) {
+            int idx = matcher.match(text, position, side);
+            if (idx >= 0) {
+                if (profiler != null) profiler.dictionaryHit(idx, side);
+                if (offsets != null) offsets.add(position, sideValues[idx].length(), targetValues[idx].length());
+                out.append(targetValues[idx]);
+                position += sideValues[idx].length();
+                continue;
+            }
+            char ch = text.charAt(position++);
+            if (ch != markerStart && ch != markerEnd) {
+                if (profiler != null) profiler.characterHit(ch, side);
+                out.append(ch);
+            } else if (offsets != null) {
+                offsets.add(position - 1, 1, 0);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Returns length of the longest dictionary word on the specified side
+     *
+     * @param side LEFT or RIGHT
+     * @return length of the longest word
+     */
+    public int getLongestWordLen(TranslitDictionary.Side side) {
+        return longestWordLen[side.ordinal()];
+    }
+
+    /**
+     * Transliterates the specified {@see text} and reports every position of the result which cannot be
+     * transliterated back unambiguously.
+     *
+     * @param text     to transliteration
+     * @param side     text will be transliterated from the specified side into an opposite side
+     * @param listener receives ambiguities in the text order
+     * @return transliterated text
+     */
+    public String transliterate(CharSequence text, TranslitDictionary.Side side, AmbiguityListener listener) {
+        final TranslitDictionary.Side target = side.invert();
+        final String[] targetValues = values[target.ordinal()];
+        final StringBuilder builder = new StringBuilder(text.length() + 16);
+        final List<Ambiguity> ambiguities = new ArrayList<Ambiguity>();
+        final List<int[]> tokens = new ArrayList<int[]>();
+        parse(text, side, new TokenHandler() {
+            @Override
+            public void dictionaryToken(int index, int start, int end) {
+                int targetPosition = builder.length();
+                builder.append(targetValues[index]);
+                tokens.add(new int[]{start, targetPosition, index});
+                if (ambiguous[target.ordinal()][index]) {
+                    ambiguities.add(new Ambiguity(Ambiguity.Kind.OPPOSITES, start, targetPosition, index,
+                            targetValues[index], opposites.get(target.ordinal()).get(targetValues[index])));
+                }
+            }
+
+            @Override
+            public void characterToken(char ch, int position) {
+                builder.append(ch);
+            }
+
+            @Override
+            public void markerToken(TranslitDictionary.ExclusionMarker marker, int position) {
+            }
+        });
+        int next = 0;
+        for (int[] token : tokens) {
+            String value = targetValues[token[2]];
+            int back = matcher.match(builder, token[1], target);
+            if (back < 0 || values[target.ordinal()][back].length() != value.length()) {
+                while (next < ambiguities.size() && ambiguities.get(next).getSourcePosition() <= token[0]) {
+                    listener.ambiguityFound(ambiguities.get(next++));
+                }
+                listener.ambiguityFound(new Ambiguity(Ambiguity.Kind.SEGMENTATION, token[0], token[1], token[2],
+                        value, Collections.<String>emptyList()));
+            }
+        }
+        while (next < ambiguities.size()) {
+            listener.ambiguityFound(ambiguities.get(next++));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Checks that the specified {@see text} is restored exactly after transliteration into the opposite side and back
+     *
+     * @param text to check
+     * @param side text is written in
+     * @return true if the round trip gives the same text
+     */
+    public boolean isRoundTrip(CharSequence text, TranslitDictionary.Side side) {
+        String there = transliterate(text, side);
+        return transliterate(there, side.invert()).contentEquals(text);
+    }
+
+    /**
+     * Indicates that the value at the specified index on the specified side has more than one opposite value
+     *
+     * @param index dictionary index
+     * @param side  LEFT or RIGHT
+     * @return true if the reverse mapping of the value is ambiguous
+     */
+    public boolean isAmbiguous(int index, TranslitDictionary.Side side) {
+        return ambiguous[side.ordinal()][index];
+    }
+
+    /**
+     * Returns index of the dictionary word which consists of the specified single character
+     *
+     * @param ch   character
+     * @param side LEFT or RIGHT
+     * @return the lowest dictionary index or -1
+     */
+    public int indexOfChar(char ch, TranslitDictionary.Side side) {
+        int pos = Arrays.binarySearch(singleChars[side.ordinal()], ch);
+        return pos < 0 ? -1 : singleCharIndexes[side.ordinal()][pos];
+    }
+
+    private void compileSingleChars(TranslitDictionary.Side side) {
+        Map<Character, Integer> map = new HashMap<Character, Integer>();
+        String[] sideValues = values[side.ordinal()];
+        for (int i = 0; i < sideValues.length; i++) {
+            if (sideValues[i] != null && sideValues[i].length() == 1 && !map.containsKey(sideValues[i].charAt(0))) {
+                int idx = matcher.match(sideValues[i], 0, side);
+                if (idx >= 0) map.put(sideValues[i].charAt(0), idx);
+            }
+        }
+        char[] chars = new char[map.size()];
+        int n = 0;
+        for (Character ch : map.keySet()) {
+            chars[n++] = ch;
+        }
+        Arrays.sort(chars);
+        int[] indexes = new int[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            indexes[i] = map.get(chars[i]);
+        }
+        singleChars[side.ordinal()] = chars;
+        singleCharIndexes[side.ordinal()] = indexes;
+    }
+
+    private void compileOpposites(TranslitDictionary.Side side) {
+        Map<String, List<String>> map = new HashMap<String, List<String>>();
+        String[] sideValues = values[side.ordinal()];
+        String[] oppositeValues = values[side.invert().ordinal()];
+        for (int i = 0; i < sideValues.length; i++) {
+            List<String> list = map.get(sideValues[i]);
+            if (list == null) {
+                list = new ArrayList<String>(1);
+                map.put(sideValues[i], list);
+            }
+            if (!list.contains(oppositeValues[i])) list.add(oppositeValues[i]);
+        }
+        for (int i = 0; i < sideValues.length; i++) {
+            ambiguous[side.ordinal()][i] = map.get(sideValues[i]).size() > 1;
+        }
+        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        opposites.add(side.ordinal(), map);
+    }
+
+    private static int markerChar(String marker) {
+        return marker != null && marker.length() == 1 ? marker.charAt(0) : -1;
+    }
+
+    /**
+     * Receives tokens found by the {@link #parse} method
+     */
+    public interface TokenHandler {
+
+        /**
+         * Called for a part of the text which is represented by the dictionary pair at the specified index
+         *
+         * @param index dictionary index
+         * @param start start position of the part in the text
+         * @param end   end position (exclusive) of the part in the text
+         */
+        public void dictionaryToken(int index, int start, int end);
+
+        /**
+         * Called for a character which is not found in the dictionary
+         *
+         * @param ch       character
+         * @param position position in the text
+         */
+        public void characterToken(char ch, int position);
+
+        /**
+         * Called for an exclusion marker
+         *
+         * @param marker   START or END
+         * @param position position in the text
+         */
+        public void markerToken(TranslitDictionary.ExclusionMarker marker, int position);
+    }
+
+    /**
+     * Receives ambiguities found by the {@link #transliterate(CharSequence, TranslitDictionary.Side, AmbiguityListener)}
+     */
+    public interface AmbiguityListener {
+        public void ambiguityFound(Ambiguity ambiguity);
+    }
+
+    /**
+     * Describes a position of a transliterated text which cannot be transliterated back unambiguously
+     */
+    public static class Ambiguity {
+
+        /**
+         * OPPOSITES - the value has more than one opposite value in the dictionary,
+         * SEGMENTATION - the reverse transliteration splits the text differently at this position
+         */
+        public enum Kind {
+            OPPOSITES,
+            SEGMENTATION
+        }
+
+        private final Kind kind;
+        private final int sourcePosition;
+        private final int targetPosition;
+        private final int index;
+        private final String value;
+        private final List<String> alternatives;
+
+        public Ambiguity(Kind kind, int sourcePosition, int targetPosition, int index, String value, List<String> alternatives) {
+            this.kind = kind;
+            this.sourcePosition = sourcePosition;
+            this.targetPosition = targetPosition;
+            this.index = index;
+            this.value = value;
+            this.alternatives = alternatives;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public int getSourcePosition() {
+            return sourcePosition;
+        }
+
+        public int getTargetPosition() {
+            return targetPosition;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Returns all values the {@see value} may be transliterated back into
+         *
+         * @return list of opposite values
+         */
+        public List<String> getAlternatives() {
+            return alternatives;
+        }
+
+        public String toString() {
+            return kind + ":" + sourcePosition + "->" + targetPosition + ";" + value + "=" + alternatives;
+        }
+    }
+}
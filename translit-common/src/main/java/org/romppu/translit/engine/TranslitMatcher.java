@@ -0,0 +1,44 @@
+package org.romppu.translit.engine;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+
+/**
+ * The TranslitMatcher performs the match step of the transliteration: it finds the dictionary word
+ * which starts at the specified position of a text. Implementations are compiled from a {@link TranslitDictionary}
+ * once and must be safe for use by many threads at the same time.
+ */
+public interface TranslitMatcher {
+
+    /**
+     * Finds the longest dictionary word on the specified side which starts at the specified position of the text.
+     * If the dictionary contains the same word several times the lowest index is returned, the pairs whose
+     * conditions do not hold are skipped (see {@link org.romppu.translit.dictionary.ContextTranslitDictionary}).
+     *
+     * @param text     text to match
+     * @param position position in the text
+     * @param side     side of the dictionary the text is written in
+     * @return index of the matched dictionary pair or -1 if nothing matches
+     */
+    public int match(CharSequence text, int position, TranslitDictionary.Side side);
+
+    /**
+     * Returns the dictionary this matcher was compiled from
+     *
+     * @return dictionary
+     */
+    public TranslitDictionary getDictionary();
+
+    /**
+     * Implemented by dictionaries which bring their own compiled matcher, {@link TranslitEngine} uses it
+     * instead of compiling the dictionary.
+     */
+    public interface Provider {
+
+        /**
+         * Returns the matcher of this dictionary
+         *
+         * @return matcher
+         */
+        public TranslitMatcher getMatcher();
+    }
+}
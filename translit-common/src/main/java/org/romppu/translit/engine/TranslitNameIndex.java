@@ -0,0 +1,348 @@
+package org.romppu.translit.engine;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+
+import java.nio.CharBuffer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * In-memory index of names which finds the same name written in either alphabet of the dictionary, e.g.
+ * <code>Sch'ukin</code> and <code>&#1065;&#1091;&#1082;&#1080;&#1085;</code>.
+ * Every name is reduced to a canonical key: the words of the dictionary are joined into classes, a word is in the
+ * same class as its opposite words (see {@link TranslitDictionary#getOppositeList(String, TranslitDictionary.Side)}),
+ * so all spellings of a pair share one class, and the text is replaced by the sequence of the classes of its words.
+ * At every position the longest word of either side is taken, the text is lowered first, the characters which are
+ * not dictionary words are kept.
+ * The keys are sorted and packed into one char array, a lookup is a binary search, so it takes microseconds on
+ * millions of names. The last word of a prefix may be incomplete, e.g. while a name is typed: the trailing chars which
+ * start longer dictionary words are expanded to the classes of these words, so both <code>Sch</code> and
+ * <code>Sch'</code> find <code>Sch'ukin</code>. The index is immutable and thread safe.
+ */
+public class TranslitNameIndex {
+
+    private static final String ERR_TOO_MANY_CLASSES = "Dictionary has too many word classes: {0}";
+    private static final char CLASS_BASE = '\uE000';
+    private static final int MAX_CLASSES = '\uF8FF' - CLASS_BASE + 1;
+
+    private final TranslitMatcher matcher;
+    private final String[][] values;
+    private final int[][] classes;
+    private final String[] names;
+    private final char[] keyChars;
+    private final int[] keyOffsets;
+    private final int[] entries;
+    private final int longestWord;
+
+    /**
+     * Indexes the specified {@see names}, the entry number of a name is its position in the collection
+     *
+     * @param dictionary translit dictionary
+     * @param names      names to index
+     */
+    public TranslitNameIndex(TranslitDictionary dictionary, Collection<String> names) {
+        this.matcher = TranslitEngine.compileMatcher(dictionary);
+        TranslitDictionary matched = matcher.getDictionary();
+        TranslitDictionary.Side[] sides = TranslitDictionary.Side.values();
+        values = new String[sides.length][matched.getSize()];
+        classes = new int[sides.length][matched.getSize()];
+        compileClasses(matched);
+        int longest = 0;
+        for (String[] sideValues : values) {
+            for (String value : sideValues) {
+                longest = Math.max(longest, value.length());
+            }
+        }
+        longestWord = longest;
+        this.names = names.toArray(new String[names.size()]);
+        final String[] keys = new String[this.names.length];
+        int length = 0;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = getKey(this.names[i]);
+            length += keys[i].length();
+        }
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int result = keys[o1].compareTo(keys[o2]);
+                return result != 0 ? result : o1.compareTo(o2);
+            }
+        });
+        keyChars = new char[length];
+        keyOffsets = new int[keys.length + 1];
+        entries = new int[keys.length];
+        int offset = 0;
+        for (int i = 0; i < order.length; i++) {
+            String key = keys[order[i]];
+            key.getChars(0, key.length(), keyChars, offset);
+            keyOffsets[i] = offset;
+            offset += key.length();
+            entries[i] = order[i];
+        }
+        keyOffsets[keys.length] = offset;
+    }
+
+    /**
+     * Returns the canonical key of the specified {@see text}, the texts with the same key are the same name
+     *
+     * @param text text in either alphabet
+     * @return canonical key
+     */
+    public String getKey(CharSequence text) {
+        char[] lowered = new char[text.length()];
+        for (int i = 0; i < lowered.length; i++) {
+            lowered[i] = Character.toLowerCase(text.charAt(i));
+        }
+        CharSequence lower = CharBuffer.wrap(lowered);
+        StringBuilder key = new StringBuilder(lowered.length);
+        int position = 0;
+        while (position < lowered.length) {
+            int bestLength = 0;
+            int bestClass = -1;
+            for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+                int idx = matcher.match(lower, position, side);
+                if (idx >= 0 && values[side.ordinal()][idx].length() > bestLength) {
+                    bestLength = values[side.ordinal()][idx].length();
+                    bestClass = classes[side.ordinal()][idx];
+                }
+            }
+            if (bestClass >= 0) {
+                key.append((char) (CLASS_BASE + bestClass));
+                position += bestLength;
+            } else {
+                key.append(lowered[position++]);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Finds the names which are the same as the specified {@see name}
+     *
+     * @param name name in either alphabet
+     * @return entry numbers in ascending order, the equal keys are sorted by the entry number
+     */
+    public int[] findExact(CharSequence name) {
+        String key = getKey(name);
+        int from = lowerBound(key, false);
+        int to = lowerBound(key, true);
+        return range(from, to, to - from);
+    }
+
+    /**
+     * Finds the names which start with the specified {@see prefix}
+     *
+     * @param prefix prefix in either alphabet
+     * @param limit  maximum amount of the returned entries
+     * @return entry numbers ordered by the keys
+     */
+    public int[] findPrefix(CharSequence prefix, int limit) {
+        List<int[]> ranges = new ArrayList<int[]>();
+        addPrefixRange(ranges, getKey(prefix));
+        int length = prefix.length();
+        for (int start = Math.max(0, length - longestWord + 1); start < length; start++) {
+            String head = null;
+            for (int wordClass : continuations(prefix, start)) {
+                if (head == null) head = getKey(prefix.subSequence(0, start));
+                addPrefixRange(ranges, head + (char) (CLASS_BASE + wordClass));
+            }
+        }
+        return merge(ranges, limit);
+    }
+
+    /**
+     * Returns the name of the specified entry
+     *
+     * @param entry entry number
+     * @return indexed name
+     */
+    public String getName(int entry) {
+        return names[entry];
+    }
+
+    /**
+     * Returns amount of indexed names
+     *
+     * @return amount of names
+     */
+    public int getSize() {
+        return names.length;
+    }
+
+    /**
+     * Joins the words of the dictionary into classes: a word and its opposite words are in one class
+     */
+    private void compileClasses(TranslitDictionary dictionary) {
+        Map<String, Integer> nodes = new HashMap<String, Integer>();
+        List<Integer> parents = new ArrayList<Integer>();
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            for (int i = 0; i < dictionary.getSize(); i++) {
+                String value = dictionary.getValueAt(i, side);
+                values[side.ordinal()][i] = value;
+                int node = node(nodes, parents, side, value);
+                for (String opposite : dictionary.getOppositeList(value, side)) {
+                    union(parents, node, node(nodes, parents, side.invert(), opposite));
+                }
+            }
+        }
+        Map<Integer, Integer> roots = new HashMap<Integer, Integer>();
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            for (int i = 0; i < dictionary.getSize(); i++) {
+                int root = find(parents, nodes.get(side.name() + values[side.ordinal()][i]));
+                Integer id = roots.get(root);
+                if (id == null) {
+                    id = roots.size();
+                    if (id >= MAX_CLASSES) {
+                        throw new IllegalArgumentException(MessageFormat.format(ERR_TOO_MANY_CLASSES, id));
+                    }
+                    roots.put(root, id);
+                }
+                classes[side.ordinal()][i] = id;
+            }
+        }
+    }
+
+    private static int node(Map<String, Integer> nodes, List<Integer> parents, TranslitDictionary.Side side,
+                            String value) {
+        String name = side.name() + value;
+        Integer node = nodes.get(name);
+        if (node == null) {
+            node = parents.size();
+            parents.add(node);
+            nodes.put(name, node);
+        }
+        return node;
+    }
+
+    private static int find(List<Integer> parents, int node) {
+        while (parents.get(node) != node) {
+            parents.set(node, parents.get(parents.get(node)));
+            node = parents.get(node);
+        }
+        return node;
+    }
+
+    private static void union(List<Integer> parents, int a, int b) {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+        if (rootA != rootB) parents.set(Math.max(rootA, rootB), Math.min(rootA, rootB));
+    }
+
+    /**
+     * Returns the first sorted position whose key is not less than the specified {@see key}, or greater than it
+     * if {@see upper} is true
+     */
+    private int lowerBound(String key, boolean upper) {
+        int lo = 0;
+        int hi = entries.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int result = compare(mid, key, Integer.MAX_VALUE);
+            if (result < 0 || upper && result == 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the first sorted position at or after the specified {@see from} whose key does not start with
+     * the specified {@see prefix}
+     */
+    private int prefixBound(String prefix, int from) {
+        int lo = from;
+        int hi = entries.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, prefix, prefix.length()) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Compares at most {@see length} first chars of the key at the specified sorted position with the specified
+     * {@see key}
+     */
+    private int compare(int position, String key, int length) {
+        int start = keyOffsets[position];
+        int keyLength = Math.min(keyOffsets[position + 1] - start, length);
+        int common = Math.min(keyLength, key.length());
+        for (int i = 0; i < common; i++) {
+            char ch = keyChars[start + i];
+            if (ch != key.charAt(i)) return ch - key.charAt(i);
+        }
+        return keyLength - key.length();
+    }
+
+    /**
+     * Returns the classes of the dictionary words which are longer than the chars of the specified {@see prefix}
+     * after the specified {@see start} and start with them
+     */
+    private Set<Integer> continuations(CharSequence prefix, int start) {
+        char[] tail = new char[prefix.length() - start];
+        for (int i = 0; i < tail.length; i++) {
+            tail[i] = Character.toLowerCase(prefix.charAt(start + i));
+        }
+        String partial = new String(tail);
+        Set<Integer> toReturn = new TreeSet<Integer>();
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            String[] sideValues = values[side.ordinal()];
+            for (int i = 0; i < sideValues.length; i++) {
+                if (sideValues[i].length() > partial.length() && sideValues[i].startsWith(partial)) {
+                    toReturn.add(classes[side.ordinal()][i]);
+                }
+            }
+        }
+        return toReturn;
+    }
+
+    private void addPrefixRange(List<int[]> ranges, String key) {
+        int from = lowerBound(key, false);
+        int to = prefixBound(key, from);
+        if (from < to) ranges.add(new int[]{from, to});
+    }
+
+    /**
+     * Returns at most {@see limit} entries of the union of the specified ranges of sorted positions
+     */
+    private int[] merge(List<int[]> ranges, int limit) {
+        if (ranges.size() == 1) return range(ranges.get(0)[0], ranges.get(0)[1], limit);
+        Collections.sort(ranges, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] o1, int[] o2) {
+                return o1[0] < o2[0] ? -1 : o1[0] == o2[0] ? 0 : 1;
+            }
+        });
+        int[] toReturn = new int[Math.max(0, Math.min(limit, entries.length))];
+        int count = 0;
+        int next = 0;
+        for (int[] range : ranges) {
+            for (int position = Math.max(range[0], next); position < range[1] && count < toReturn.length; position++) {
+                toReturn[count++] = entries[position];
+            }
+            next = Math.max(next, range[1]);
+        }
+        return count == toReturn.length ? toReturn : Arrays.copyOf(toReturn, count);
+    }
+
+    private int[] range(int from, int to, int limit) {
+        int[] toReturn = new int[Math.max(0, Math.min(to - from, limit))];
+        for (int i = 0; i < toReturn.length; i++) {
+            toReturn[i] = entries[from + i];
+        }
+        return toReturn;
+    }
+}
@@ -0,0 +1,125 @@
+package org.romppu.translit.engine;
+
+import java.util.Arrays;
+
+/**
+ * Map between the positions of a text and the positions of its transliteration, created by
+ * {@link TranslitEngine#transliterateWithOffsets(CharSequence, org.romppu.translit.dictionary.TranslitDictionary.Side, Appendable)}.
+ * Only the tokens whose source and target lengths differ are recorded, e.g. <code>shch</code> which becomes
+ * a single character or an exclusion marker which is dropped; every record keeps the source position of the token,
+ * the difference of the target and source positions before it and both lengths. A text of the same length in both
+ * alphabets has an empty map.
+ * A position is converted in O(log n) of the amount of records in both directions. A position inside a recorded
+ * token is converted to the start of the opposite token, a position between the tokens keeps its distance from the
+ * preceding token. The map is immutable.
+ */
+public class TranslitOffsetMap {
+
+    private static final int LENGTH_BITS = 16;
+    private static final int LENGTH_MASK = (1 << LENGTH_BITS) - 1;
+
+    private final int[] sourceStarts;
+    private final int[] deltas;
+    private final int[] lengths;
+    private final int size;
+
+    private TranslitOffsetMap(int[] sourceStarts, int[] deltas, int[] lengths, int size) {
+        this.sourceStarts = sourceStarts;
+        this.deltas = deltas;
+        this.lengths = lengths;
+        this.size = size;
+    }
+
+    /**
+     * Converts a position of the source text into the position of the transliterated text
+     *
+     * @param position source position, the length of the source text is allowed
+     * @return target position
+     */
+    public int toTarget(int position) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sourceStarts[mid] <= position) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        if (hi < 0) return position;
+        int sourceEnd = sourceStarts[hi] + sourceLength(hi);
+        int targetStart = sourceStarts[hi] + deltas[hi];
+        if (position < sourceEnd) return targetStart;
+        return targetStart + targetLength(hi) + position - sourceEnd;
+    }
+
+    /**
+     * Converts a position of the transliterated text into the position of the source text. A position where dropped
+     * tokens are recorded (e.g. exclusion markers) is converted to the position after them.
+     *
+     * @param position target position, the length of the transliterated text is allowed
+     * @return source position
+     */
+    public int toSource(int position) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sourceStarts[mid] + deltas[mid] <= position) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        if (hi < 0) return position;
+        int targetEnd = sourceStarts[hi] + deltas[hi] + targetLength(hi);
+        if (position < targetEnd) return sourceStarts[hi];
+        return sourceStarts[hi] + sourceLength(hi) + position - targetEnd;
+    }
+
+    /**
+     * Returns amount of the recorded tokens
+     *
+     * @return amount of records
+     */
+    public int getSize() {
+        return size;
+    }
+
+    private int sourceLength(int record) {
+        return lengths[record] >>> LENGTH_BITS;
+    }
+
+    private int targetLength(int record) {
+        return lengths[record] & LENGTH_MASK;
+    }
+
+    /**
+     * Collects the tokens in the text order
+     */
+    static class Builder {
+
+        private int[] sourceStarts = new int[16];
+        private int[] deltas = new int[16];
+        private int[] lengths = new int[16];
+        private int size;
+        private int delta;
+
+        /**
+         * Records the token at the specified {@see sourceStart} if its lengths differ
+         */
+        void add(int sourceStart, int sourceLength, int targetLength) {
+            if (sourceLength == targetLength) return;
+            if (size == sourceStarts.length) {
+                sourceStarts = Arrays.copyOf(sourceStarts, size * 2);
+                deltas = Arrays.copyOf(deltas, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            sourceStarts[size] = sourceStart;
+            deltas[size] = delta;
+            lengths[size] = sourceLength << LENGTH_BITS | targetLength;
+            size++;
+            delta += targetLength - sourceLength;
+        }
+
+        TranslitOffsetMap build() {
+            return new TranslitOffsetMap(Arrays.copyOf(sourceStarts, size), Arrays.copyOf(deltas, size),
+                    Arrays.copyOf(lengths, size), size);
+        }
+    }
+}
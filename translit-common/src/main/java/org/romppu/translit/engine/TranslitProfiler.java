@@ -0,0 +1,152 @@
+package org.romppu.translit.engine;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of the hits of the dictionary pairs and of the characters which are not matched by any word.
+ * A profiler is filled by a {@link TranslitEngine} created in profiling mode
+ * (see {@link TranslitEngine#TranslitEngine(TranslitMatcher, TranslitProfiler)}), the counters are thread safe.
+ * The collected histogram may be passed to
+ * {@link org.romppu.translit.engine.impl.TrieTranslitMatcher#TrieTranslitMatcher(TranslitDictionary, TranslitProfiler)}
+ * which lays out the hot words first.
+ */
+public class TranslitProfiler {
+
+    private final int size;
+    private final AtomicLongArray hits;
+    private final List<ConcurrentMap<Character, AtomicLong>> characterHits =
+            new ArrayList<ConcurrentMap<Character, AtomicLong>>();
+
+    /**
+     * Creates a profiler of a dictionary
+     *
+     * @param size amount of pairs of the dictionary
+     */
+    public TranslitProfiler(int size) {
+        this.size = size;
+        this.hits = new AtomicLongArray(size * TranslitDictionary.Side.values().length);
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            characterHits.add(side.ordinal(), new ConcurrentHashMap<Character, AtomicLong>());
+        }
+    }
+
+    /**
+     * Counts a match of the pair at the specified index
+     *
+     * @param index dictionary index
+     * @param side  side of the matched word
+     */
+    public void dictionaryHit(int index, TranslitDictionary.Side side) {
+        hits.incrementAndGet(side.ordinal() * size + index);
+    }
+
+    /**
+     * Counts a character of the text which is not matched by any word, the characters which are transliterated by
+     * the pair of the opposite side are counted too
+     *
+     * @param ch   character
+     * @param side side of the text
+     */
+    public void characterHit(char ch, TranslitDictionary.Side side) {
+        ConcurrentMap<Character, AtomicLong> map = characterHits.get(side.ordinal());
+        AtomicLong counter = map.get(ch);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = map.putIfAbsent(ch, created);
+            if (counter == null) counter = created;
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Returns amount of pairs of the profiled dictionary
+     *
+     * @return amount of pairs
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns amount of matches of the pair at the specified index
+     *
+     * @param index dictionary index
+     * @param side  side of the matched word
+     * @return amount of hits
+     */
+    public long getHits(int index, TranslitDictionary.Side side) {
+        return hits.get(side.ordinal() * size + index);
+    }
+
+    /**
+     * Returns amounts of matches of all pairs
+     *
+     * @param side side of the matched words
+     * @return array of hits by dictionary index
+     */
+    public long[] getHits(TranslitDictionary.Side side) {
+        long[] toReturn = new long[size];
+        for (int i = 0; i < size; i++) {
+            toReturn[i] = getHits(i, side);
+        }
+        return toReturn;
+    }
+
+    /**
+     * Returns amounts of the characters which are not matched by any word
+     *
+     * @param side side of the text
+     * @return hits by character in the character order
+     */
+    public Map<Character, Long> getCharacterHits(TranslitDictionary.Side side) {
+        Map<Character, Long> toReturn = new TreeMap<Character, Long>();
+        for (Map.Entry<Character, AtomicLong> entry : characterHits.get(side.ordinal()).entrySet()) {
+            toReturn.put(entry.getKey(), entry.getValue().get());
+        }
+        return toReturn;
+    }
+
+    /**
+     * Returns the indexes of the pairs which were matched at least once, the most matched pair first
+     *
+     * @param side side of the matched words
+     * @return dictionary indexes
+     */
+    public List<Integer> getHotIndexes(TranslitDictionary.Side side) {
+        final long[] sideHits = getHits(side);
+        List<Integer> toReturn = new ArrayList<Integer>();
+        for (int i = 0; i < sideHits.length; i++) {
+            if (sideHits[i] > 0) toReturn.add(i);
+        }
+        Collections.sort(toReturn, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return sideHits[o1] != sideHits[o2] ? (sideHits[o1] > sideHits[o2] ? -1 : 1) : o1.compareTo(o2);
+            }
+        });
+        return toReturn;
+    }
+
+    /**
+     * Clears all counters
+     */
+    public void reset() {
+        for (int i = 0; i < hits.length(); i++) {
+            hits.set(i, 0);
+        }
+        for (ConcurrentMap<Character, AtomicLong> map : characterHits) {
+            map.clear();
+        }
+    }
+}
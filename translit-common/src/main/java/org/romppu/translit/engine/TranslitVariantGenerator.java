@@ -0,0 +1,246 @@
+package org.romppu.translit.engine;
+
+import org.romppu.translit.dictionary.CharCondition;
+import org.romppu.translit.dictionary.ContextTranslitDictionary;
+import org.romppu.translit.dictionary.TranslitDictionary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates the best transliteration variants of a text, e.g. all reasonable spellings of a surname for fuzzy
+ * matching keys. The variants are paths of the match lattice of the text: a node is a position of the text, an edge
+ * is a dictionary word which matches at the position together with one of its opposite words.
+ * Every edge has a cost: the word chosen by the {@link TranslitEngine} and its own opposite cost nothing, an other
+ * opposite of the same word costs its rank among the opposites, a shorter or longer word which matches at the
+ * position costs one more. So the first variant is always the output of the engine and the others are ordered by
+ * the amount and the rank of their deviations.
+ * The lattice is walked from the start to the end keeping at most <code>limit</code> cheapest distinct partial
+ * variants at every node, so the work is linear in the length of the text and in the limit.
+ * The generator is immutable and may be shared by many threads.
+ */
+public class TranslitVariantGenerator {
+
+    private final TranslitEngine engine;
+    private final ContextTranslitDictionary contextDictionary;
+    private final List<Map<String, int[]>> words = new ArrayList<Map<String, int[]>>();
+    private final List<Map<String, List<String>>> opposites = new ArrayList<Map<String, List<String>>>();
+    private final String markerStart;
+    private final String markerEnd;
+
+    /**
+     * Creates a generator of the variants of the specified {@see engine}
+     *
+     * @param engine translit engine
+     */
+    public TranslitVariantGenerator(TranslitEngine engine) {
+        this.engine = engine;
+        TranslitDictionary dictionary = engine.getDictionary();
+        contextDictionary = dictionary instanceof ContextTranslitDictionary
+                && ((ContextTranslitDictionary) dictionary).hasConditions()
+                ? (ContextTranslitDictionary) dictionary : null;
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            Map<String, List<Integer>> sideIndexes = new HashMap<String, List<Integer>>();
+            Map<String, List<String>> sideOpposites = new HashMap<String, List<String>>();
+            for (int i = 0; i < dictionary.getSize(); i++) {
+                String value = engine.getValue(i, side);
+                if (value == null || value.isEmpty()) continue;
+                List<Integer> indexes = sideIndexes.get(value);
+                List<String> values = sideOpposites.get(value);
+                if (indexes == null) {
+                    indexes = new ArrayList<Integer>(1);
+                    values = new ArrayList<String>(1);
+                    sideIndexes.put(value, indexes);
+                    sideOpposites.put(value, values);
+                }
+                indexes.add(i);
+                String opposite = engine.getValue(i, side.invert());
+                if (!values.contains(opposite)) values.add(opposite);
+            }
+            Map<String, int[]> sideWords = new HashMap<String, int[]>();
+            for (Map.Entry<String, List<Integer>> entry : sideIndexes.entrySet()) {
+                int[] indexes = new int[entry.getValue().size()];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = entry.getValue().get(i);
+                }
+                sideWords.put(entry.getKey(), indexes);
+            }
+            words.add(side.ordinal(), sideWords);
+            opposites.add(side.ordinal(), sideOpposites);
+        }
+        markerStart = dictionary.getExclusionMarker(TranslitDictionary.ExclusionMarker.START);
+        markerEnd = dictionary.getExclusionMarker(TranslitDictionary.ExclusionMarker.END);
+    }
+
+    /**
+     * Returns at most {@see limit} cheapest distinct transliterations of the specified {@see text}
+     *
+     * @param text  to transliteration
+     * @param side  text will be transliterated from the specified side into an opposite side
+     * @param limit maximum amount of variants
+     * @return variants, the output of the engine first
+     */
+    public List<String> generate(CharSequence text, TranslitDictionary.Side side, int limit) {
+        List<String> toReturn = new ArrayList<String>();
+        if (limit <= 0) return toReturn;
+        int length = text.length();
+        Beam[] beams = new Beam[length + 1];
+        beams[0] = new Beam(limit);
+        beams[0].offer(new Variant(null, "", 0));
+        for (int position = 0; position < length; position++) {
+            Beam beam = beams[position];
+            if (beam == null || beam.variants.isEmpty()) continue;
+            for (Edge edge : edges(text, position, side)) {
+                Beam target = beams[position + edge.length];
+                if (target == null) {
+                    target = new Beam(limit);
+                    beams[position + edge.length] = target;
+                }
+                for (Variant variant : beam.variants) {
+                    target.offer(new Variant(variant, edge.value, variant.cost + edge.cost));
+                }
+            }
+            beams[position] = null;
+        }
+        for (Variant variant : beams[length].variants) {
+            toReturn.add(variant.toString());
+        }
+        return toReturn;
+    }
+
+    /**
+     * Collects the edges which start at the specified {@see position}, the edges of the word chosen by the engine
+     * go first
+     */
+    private List<Edge> edges(CharSequence text, int position, TranslitDictionary.Side side) {
+        List<Edge> toReturn = new ArrayList<Edge>();
+        int idx = engine.getMatcher().match(text, position, side);
+        String chosen = null;
+        if (idx >= 0) {
+            chosen = engine.getValue(idx, side);
+            String value = engine.getValue(idx, side.invert());
+            toReturn.add(new Edge(chosen.length(), value, 0));
+            addOpposites(toReturn, chosen, side, value, 0);
+        } else {
+            String ch = String.valueOf(text.charAt(position));
+            boolean marker = ch.equals(markerStart) || ch.equals(markerEnd);
+            toReturn.add(new Edge(1, marker ? "" : ch, 0));
+        }
+        Map<String, int[]> sideWords = words.get(side.ordinal());
+        int longest = Math.min(engine.getLongestWordLen(side), text.length() - position);
+        for (int len = 1; len <= longest; len++) {
+            String word = text.subSequence(position, position + len).toString();
+            if (word.equals(chosen)) continue;
+            int[] indexes = sideWords.get(word);
+            if (indexes != null && conditionsHold(text, position, len, indexes)) {
+                addOpposites(toReturn, word, side, null, 1);
+            }
+        }
+        return toReturn;
+    }
+
+    private void addOpposites(List<Edge> edges, String word, TranslitDictionary.Side side, String skip, int cost) {
+        int rank = skip == null ? 0 : 1;
+        for (String opposite : opposites.get(side.ordinal()).get(word)) {
+            if (opposite.equals(skip)) continue;
+            edges.add(new Edge(word.length(), opposite, cost + rank++));
+        }
+    }
+
+    private boolean conditionsHold(CharSequence text, int position, int length, int[] indexes) {
+        if (contextDictionary == null) return true;
+        for (int idx : indexes) {
+            CharCondition before = contextDictionary.getCondition(idx, ContextTranslitDictionary.Context.BEFORE);
+            CharCondition after = contextDictionary.getCondition(idx, ContextTranslitDictionary.Context.AFTER);
+            if ((before == null || before.accepts(text, position - 1))
+                    && (after == null || after.accepts(text, position + length))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Edge {
+        private final int length;
+        private final String value;
+        private final int cost;
+
+        private Edge(int length, String value, int cost) {
+            this.length = length;
+            this.value = value;
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * Partial variant, a node of a linked list of the edge values. The hash code and the length of the whole text
+     * are kept, so distinct variants are compared without building their texts.
+     */
+    private static class Variant {
+        private final Variant parent;
+        private final String value;
+        private final int cost;
+        private final int length;
+        private final int hash;
+
+        private Variant(Variant parent, String value, int cost) {
+            this.parent = parent;
+            this.value = value;
+            this.cost = cost;
+            int parentHash = parent == null ? 0 : parent.hash;
+            for (int i = 0; i < value.length(); i++) {
+                parentHash = 31 * parentHash + value.charAt(i);
+            }
+            this.hash = parentHash;
+            this.length = (parent == null ? 0 : parent.length) + value.length();
+        }
+
+        private boolean sameText(Variant other) {
+            return hash == other.hash && length == other.length && toString().equals(other.toString());
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            int end = length;
+            for (Variant variant = this; variant != null; variant = variant.parent) {
+                end -= variant.value.length();
+                variant.value.getChars(0, variant.value.length(), chars, end);
+            }
+            return new String(chars);
+        }
+    }
+
+    /**
+     * At most <code>limit</code> cheapest distinct variants which end at one node, ordered by the cost and then by
+     * the arrival
+     */
+    private static class Beam {
+        private final int limit;
+        private final List<Variant> variants = new ArrayList<Variant>();
+
+        private Beam(int limit) {
+            this.limit = limit;
+        }
+
+        private void offer(Variant candidate) {
+            if (variants.size() == limit && variants.get(limit - 1).cost <= candidate.cost) return;
+            for (int i = 0; i < variants.size(); i++) {
+                Variant variant = variants.get(i);
+                if (variant.sameText(candidate)) {
+                    if (variant.cost <= candidate.cost) return;
+                    variants.remove(i);
+                    break;
+                }
+            }
+            int position = variants.size();
+            while (position > 0 && variants.get(position - 1).cost > candidate.cost) {
+                position--;
+            }
+            variants.add(position, candidate);
+            if (variants.size() > limit) variants.remove(limit);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.romppu.translit.engine;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer which transliterates written text by the {@link TranslitEngine} and passes result to another writer.
+ * The text may be written by chunks of any size: characters which may be a beginning of a dictionary word are kept
+ * until the following characters arrive, so the result is the same as transliteration of the whole text at once.
+ * The last processed character is kept as well, it is the preceding character of the conditions of the dictionary.
+ * The rest of the text is transliterated by {@link #close()}.
+ */
+public class TranslitWriter extends Writer {
+
+    private final TranslitEngine engine;
+    private final TranslitDictionary.Side side;
+    private final Writer out;
+    private final int lookahead;
+    private final StringBuilder pending = new StringBuilder();
+    private int start;
+
+    /**
+     * @param engine translit engine
+     * @param side   text will be transliterated from the specified side into an opposite side
+     * @param out    receives transliterated text
+     */
+    public TranslitWriter(TranslitEngine engine, TranslitDictionary.Side side, Writer out) {
+        this.engine = engine;
+        this.side = side;
+        this.out = out;
+        this.lookahead = Math.max(1, engine.getLongestWordLen(side)) + 1;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        pending.append(cbuf, off, len);
+        process(pending.length() - lookahead + 1);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        pending.append(str, off, off + len);
+        process(pending.length() - lookahead + 1);
+    }
+
+    /**
+     * Flushes the underlying writer. Characters which may be a beginning of a dictionary word are not flushed.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Transliterates the rest of the text and closes the underlying writer
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * Transliterates the rest of the text without closing the underlying writer
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        process(pending.length());
+        out.flush();
+    }
+
+    private void process(int limit) throws IOException {
+        if (limit <= start) return;
+        int processed = engine.transliterate(pending, start, limit, side, out);
+        pending.delete(0, processed - 1);
+        start = 1;
+    }
+}
@@ -0,0 +1,162 @@
+package org.romppu.translit.engine.impl;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.engine.TranslitMatcher;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matcher of a dictionary which keeps every pair in lower case only and derives its case variants.
+ * The pair number <code>k</code> has the dictionary indexes <code>k * VARIANTS + LOWER</code>,
+ * <code>k * VARIANTS + UPPER</code> and <code>k * VARIANTS + TITLE</code>, a pair which is not folded has the same
+ * words at all three indexes.
+ * The words are compiled in lower case into one {@link TrieTranslitMatcher}, the text is lowered while the trie is
+ * walked and the case pattern of the walked characters decides the variant, so the trie has the size of the lower
+ * case dictionary and mixed case input like <code>Sch</code> is matched without a pair of its own.
+ * The case is changed char by char (see {@link #toLowerCase(String)}), the lengths of the variants are the same.
+ */
+public class CaseFoldingTranslitMatcher implements TranslitMatcher {
+
+    public static final int VARIANTS = 3;
+    public static final int LOWER = 0;
+    public static final int UPPER = 1;
+    public static final int TITLE = 2;
+
+    private final TranslitDictionary dictionary;
+    private final TrieTranslitMatcher trie;
+    private final String[][] words;
+    private final boolean[] folded;
+    private final int[][][] entries = new int[TranslitDictionary.Side.values().length][][];
+
+    /**
+     * Compiles the specified pairs
+     *
+     * @param dictionary dictionary returned by {@link #getDictionary()}
+     * @param words      words of every side, the words of a folded pair are in lower case
+     * @param folded     indicates that the case variants of the pair are derived
+     */
+    public CaseFoldingTranslitMatcher(TranslitDictionary dictionary, String[][] words, boolean[] folded) {
+        this.dictionary = dictionary;
+        this.words = words;
+        this.folded = folded;
+        String[][] keys = new String[words.length][];
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+            String[] sideWords = words[side.ordinal()];
+            for (int k = 0; k < sideWords.length; k++) {
+                if (sideWords[k] == null || sideWords[k].isEmpty()) continue;
+                String key = toLowerCase(sideWords[k]);
+                List<Integer> group = groups.get(key);
+                if (group == null) {
+                    group = new ArrayList<Integer>(1);
+                    groups.put(key, group);
+                }
+                group.add(k);
+            }
+            keys[side.ordinal()] = groups.keySet().toArray(new String[groups.size()]);
+            int[][] sideEntries = new int[groups.size()][];
+            int n = 0;
+            for (List<Integer> group : groups.values()) {
+                int[] array = new int[group.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = group.get(i);
+                }
+                sideEntries[n++] = array;
+            }
+            entries[side.ordinal()] = sideEntries;
+        }
+        trie = new TrieTranslitMatcher(dictionary, keys);
+    }
+
+    @Override
+    public int match(CharSequence text, int position, TranslitDictionary.Side side) {
+        int[][] sideEntries = entries[side.ordinal()];
+        String[] sideWords = words[side.ordinal()];
+        boolean lower = true;
+        boolean upper = true;
+        boolean title = true;
+        int node = 0;
+        int result = -1;
+        for (int i = position; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            char lowerCh = Character.toLowerCase(ch);
+            node = trie.child(side, node, lowerCh);
+            if (node < 0) break;
+            boolean isLower = ch == lowerCh;
+            boolean isUpper = ch == Character.toUpperCase(lowerCh);
+            lower &= isLower;
+            upper &= isUpper;
+            title &= i == position ? isUpper : isLower;
+            int value = trie.value(side, node);
+            if (value < 0) continue;
+            for (int k : sideEntries[value]) {
+                if (folded[k]) {
+                    if (lower || upper || title) {
+                        result = k * VARIANTS + (lower ? LOWER : upper ? UPPER : TITLE);
+                        break;
+                    }
+                } else if (regionMatches(text, position, sideWords[k])) {
+                    result = k * VARIANTS;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public TranslitDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns amount of trie nodes on the specified side
+     *
+     * @param side LEFT or RIGHT
+     * @return amount of nodes
+     */
+    public int getNodeCount(TranslitDictionary.Side side) {
+        return trie.getNodeCount(side);
+    }
+
+    /**
+     * Lowers the specified string char by char
+     */
+    public static String toLowerCase(String string) {
+        char[] chars = string.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Uppers the specified string char by char
+     */
+    public static String toUpperCase(String string) {
+        char[] chars = string.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toUpperCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Uppers the first char of the specified lower case string
+     */
+    public static String toTitleCase(String string) {
+        if (string.isEmpty()) return string;
+        return Character.toUpperCase(string.charAt(0)) + string.substring(1);
+    }
+
+    private static boolean regionMatches(CharSequence text, int position, String word) {
+        if (position + word.length() > text.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (text.charAt(position + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+}
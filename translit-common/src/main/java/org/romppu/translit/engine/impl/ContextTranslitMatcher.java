@@ -0,0 +1,150 @@
+package org.romppu.translit.engine.impl;
+
+import org.romppu.translit.dictionary.CharCondition;
+import org.romppu.translit.dictionary.ContextTranslitDictionary;
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.engine.TranslitMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Matcher of a {@link ContextTranslitDictionary}.
+ * The words are compiled into a {@link TrieTranslitMatcher}, a node of a word which has pairs with conditions keeps
+ * the list of its candidate pairs in the dictionary order. The distinct conditions of the dictionary are numbered,
+ * every character is compiled into the bit mask of the conditions it satisfies (the masks of the characters below
+ * {@value #TABLE_SIZE} are kept in a table), so a candidate is checked by two bit operations. The preceding
+ * character is classified once per match, the following one only at the nodes which have candidates with
+ * conditions, the words without conditions are matched as fast as by the plain trie.
+ */
+public class ContextTranslitMatcher implements TranslitMatcher {
+
+    private static final int TABLE_SIZE = 0x500;
+    private static final int MAX_CONDITIONS = 31;
+    private static final String ERR_TOO_MANY_CONDITIONS = "Dictionary has more than " + MAX_CONDITIONS + " distinct conditions";
+
+    private final TranslitDictionary dictionary;
+    private final TrieTranslitMatcher trie;
+    private final int[][][] candidates = new int[TranslitDictionary.Side.values().length][][];
+    private final int[] beforeMasks;
+    private final int[] afterMasks;
+    private final CharCondition[] conditions;
+    private final int[] table = new int[TABLE_SIZE];
+    private final int boundaryMask;
+
+    /**
+     * Compiles the specified {@see dictionary}
+     *
+     * @param dictionary dictionary with conditions
+     */
+    public ContextTranslitMatcher(ContextTranslitDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.trie = new TrieTranslitMatcher(dictionary);
+        int size = dictionary.getSize();
+        List<CharCondition> distinct = new ArrayList<CharCondition>();
+        beforeMasks = new int[size];
+        afterMasks = new int[size];
+        for (int i = 0; i < size; i++) {
+            beforeMasks[i] = mask(dictionary.getCondition(i, ContextTranslitDictionary.Context.BEFORE), distinct);
+            afterMasks[i] = mask(dictionary.getCondition(i, ContextTranslitDictionary.Context.AFTER), distinct);
+        }
+        conditions = distinct.toArray(new CharCondition[distinct.size()]);
+        for (int ch = 0; ch < TABLE_SIZE; ch++) {
+            table[ch] = classify(ch);
+        }
+        boundaryMask = classify(-1);
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            compileCandidates(side);
+        }
+    }
+
+    @Override
+    public int match(CharSequence text, int position, TranslitDictionary.Side side) {
+        int[][] sideCandidates = candidates[side.ordinal()];
+        int before = 0;
+        boolean classified = false;
+        int node = 0;
+        int result = -1;
+        for (int i = position; i < text.length(); i++) {
+            node = trie.child(side, node, text.charAt(i));
+            if (node < 0) break;
+            int value = trie.value(side, node);
+            if (value < 0) continue;
+            int[] list = sideCandidates[value];
+            if (list == null) {
+                result = value;
+                continue;
+            }
+            if (!classified) {
+                before = position > 0 ? charMask(text.charAt(position - 1)) : boundaryMask;
+                classified = true;
+            }
+            int after = i + 1 < text.length() ? charMask(text.charAt(i + 1)) : boundaryMask;
+            for (int idx : list) {
+                if ((beforeMasks[idx] & before) == beforeMasks[idx] && (afterMasks[idx] & after) == afterMasks[idx]) {
+                    result = idx;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public TranslitDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Collects the candidates of every word which has pairs with conditions. The candidates are the pairs of
+     * the word up to the first pair without conditions, which always matches.
+     */
+    private void compileCandidates(TranslitDictionary.Side side) {
+        int size = dictionary.getSize();
+        int[][] sideCandidates = new int[size][];
+        for (int i = 0; i < size; i++) {
+            String word = dictionary.getValueAt(i, side);
+            if (word.isEmpty()) continue;
+            int first = trie.match(word, 0, side);
+            if (first < 0 || sideCandidates[first] != null || !dictionary.getValueAt(first, side).equals(word)) continue;
+            boolean conditional = false;
+            List<Integer> list = new ArrayList<Integer>();
+            for (int j = first; j < size; j++) {
+                if (!word.equals(dictionary.getValueAt(j, side))) continue;
+                list.add(j);
+                if (beforeMasks[j] == 0 && afterMasks[j] == 0) break;
+                conditional = true;
+            }
+            if (!conditional) continue;
+            int[] array = new int[list.size()];
+            for (int j = 0; j < array.length; j++) {
+                array[j] = list.get(j);
+            }
+            sideCandidates[first] = array;
+        }
+        candidates[side.ordinal()] = sideCandidates;
+    }
+
+    private int charMask(char ch) {
+        return ch < TABLE_SIZE ? table[ch] : classify(ch);
+    }
+
+    private int classify(int ch) {
+        int mask = 0;
+        for (int i = 0; i < conditions.length; i++) {
+            if (conditions[i].accepts(ch)) mask |= 1 << i;
+        }
+        return mask;
+    }
+
+    private static int mask(CharCondition condition, List<CharCondition> distinct) {
+        if (condition == null) return 0;
+        int bit = distinct.indexOf(condition);
+        if (bit < 0) {
+            if (distinct.size() == MAX_CONDITIONS) throw new IllegalArgumentException(ERR_TOO_MANY_CONDITIONS);
+            bit = distinct.size();
+            distinct.add(condition);
+        }
+        return 1 << bit;
+    }
+}
@@ -0,0 +1,105 @@
+package org.romppu.translit.engine.impl;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.engine.TranslitMatcher;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Matcher of a dictionary which consists of a base dictionary and pairs added over it.
+ * The indexes below the size of the base dictionary are the base pairs, the base is matched by its own compiled
+ * {@link TrieTranslitMatcher}, which is shared by all dictionaries built over the same base.
+ * The added pairs and the changes of the base are compiled into one small overlay trie, both tries are walked
+ * together in one pass, so the amount of layers does not matter at match time. A word of the overlay wins over the
+ * same word of the base. A base word whose pair is hidden is replaced in the overlay by the next visible base pair
+ * of the same word or by a tombstone. The added pairs precede the replacements in the overlay, so an added word
+ * wins over a replacement of the same word.
+ */
+public class LayeredTranslitMatcher implements TranslitMatcher {
+
+    private static final int TOMBSTONE = -1;
+
+    private final TranslitDictionary dictionary;
+    private final TrieTranslitMatcher base;
+    private final TrieTranslitMatcher overlay;
+    private final int[][] overlayValues = new int[TranslitDictionary.Side.values().length][];
+
+    /**
+     * Compiles the overlay of the specified {@see dictionary}
+     *
+     * @param dictionary the layered dictionary, its first pairs are the pairs of the base
+     * @param base       compiled base dictionary
+     * @param hidden     indexes of pairs which must never be matched
+     */
+    public LayeredTranslitMatcher(TranslitDictionary dictionary, TrieTranslitMatcher base, BitSet hidden) {
+        this.dictionary = dictionary;
+        this.base = base;
+        int baseSize = base.getDictionary().getSize();
+        int size = dictionary.getSize();
+        String[][] words = new String[overlayValues.length][];
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            List<String> sideWords = new ArrayList<String>();
+            List<Integer> values = new ArrayList<Integer>();
+            for (int idx = baseSize; idx < size; idx++) {
+                sideWords.add(hidden.get(idx) ? null : dictionary.getValueAt(idx, side));
+                values.add(idx);
+            }
+            for (int idx = hidden.nextSetBit(0); idx >= 0 && idx < baseSize; idx = hidden.nextSetBit(idx + 1)) {
+                String word = dictionary.getValueAt(idx, side);
+                if (word.isEmpty() || base.match(word, 0, side) != idx) continue;
+                sideWords.add(word);
+                values.add(nextVisible(word, idx, side, baseSize, hidden));
+            }
+            words[side.ordinal()] = sideWords.toArray(new String[sideWords.size()]);
+            int[] sideValues = new int[values.size()];
+            for (int i = 0; i < sideValues.length; i++) {
+                sideValues[i] = values.get(i);
+            }
+            overlayValues[side.ordinal()] = sideValues;
+        }
+        overlay = new TrieTranslitMatcher(dictionary, words);
+    }
+
+    @Override
+    public int match(CharSequence text, int position, TranslitDictionary.Side side) {
+        int[] values = overlayValues[side.ordinal()];
+        int baseNode = 0;
+        int overlayNode = 0;
+        int result = -1;
+        for (int i = position; i < text.length() && (baseNode >= 0 || overlayNode >= 0); i++) {
+            char ch = text.charAt(i);
+            if (baseNode >= 0) baseNode = base.child(side, baseNode, ch);
+            if (overlayNode >= 0) overlayNode = overlay.child(side, overlayNode, ch);
+            int value = overlayNode >= 0 ? overlay.value(side, overlayNode) : -1;
+            if (value >= 0) {
+                if (values[value] != TOMBSTONE) result = values[value];
+            } else if (baseNode >= 0 && base.value(side, baseNode) >= 0) {
+                result = base.value(side, baseNode);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public TranslitDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns the compiled base dictionary
+     *
+     * @return base matcher
+     */
+    public TrieTranslitMatcher getBase() {
+        return base;
+    }
+
+    private int nextVisible(String word, int idx, TranslitDictionary.Side side, int baseSize, BitSet hidden) {
+        for (int i = idx + 1; i < baseSize; i++) {
+            if (!hidden.get(i) && word.equals(dictionary.getValueAt(i, side))) return i;
+        }
+        return TOMBSTONE;
+    }
+}
@@ -0,0 +1,180 @@
+package org.romppu.translit.engine.impl;
+
+import org.romppu.translit.Dict2Java;
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.engine.TranslitEngine;
+import org.romppu.translit.engine.TranslitMatcher;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.security.CodeSource;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles a dictionary loaded at runtime into a specialised {@link TranslitMatcher} class.
+ * The source of the matcher is generated by {@link Dict2Java}, compiled in memory by the system Java compiler and
+ * defined by a class loader of its own, so the class is unloaded together with the matcher.
+ * The system compiler is available on a JDK only, {@link #compile(TranslitDictionary)} falls back to
+ * the default matcher when it is missing or the compilation fails, e.g. for a dictionary with conditions.
+ */
+public class RuntimeTranslitMatcherCompiler {
+
+    private static final String PACKAGE = "org.romppu.translit.engine.generated";
+    private static final String ERR_NO_COMPILER = "System Java compiler is not available";
+    private static final String ERR_COMPILATION = "Cannot compile matcher {0}: {1}";
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    private RuntimeTranslitMatcherCompiler() {
+    }
+
+    /**
+     * Indicates that the matchers can be compiled in this JVM
+     */
+    public static boolean isAvailable() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    /**
+     * Compiles the specified {@see dictionary} into a specialised matcher, the default matcher
+     * (see {@link TranslitEngine#compileMatcher(TranslitDictionary)}) is returned if the matcher cannot be compiled
+     *
+     * @param dictionary translit dictionary
+     * @return compiled matcher
+     */
+    public static TranslitMatcher compile(TranslitDictionary dictionary) {
+        try {
+            return generate(dictionary);
+        } catch (Exception e) {
+            return TranslitEngine.compileMatcher(dictionary);
+        }
+    }
+
+    /**
+     * Compiles the specified {@see dictionary} into a specialised matcher. Later changes of the dictionary are not
+     * visible to the matcher.
+     *
+     * @param dictionary translit dictionary
+     * @return compiled matcher
+     * @throws Exception if the system compiler is not available or the compilation fails
+     */
+    public static TranslitMatcher generate(TranslitDictionary dictionary) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) throw new IllegalStateException(ERR_NO_COMPILER);
+        String className = PACKAGE + ".Matcher" + counter.incrementAndGet();
+        StringWriter source = new StringWriter();
+        new Dict2Java(dictionary, className).generateMatcher(source);
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager standardManager = compiler.getStandardFileManager(diagnostics, null, null);
+        MemoryFileManager fileManager = new MemoryFileManager(standardManager);
+        List<String> options = Arrays.asList("-classpath", getClassPath(), "-g:none", "-nowarn");
+        List<JavaFileObject> units = new ArrayList<JavaFileObject>();
+        units.add(new SourceFile(className, source.toString()));
+        try {
+            if (!compiler.getTask(null, fileManager, diagnostics, options, null, units).call()) {
+                throw new IllegalStateException(MessageFormat.format(ERR_COMPILATION, className,
+                        diagnostics.getDiagnostics()));
+            }
+        } finally {
+            fileManager.close();
+        }
+        ClassLoader loader = new MemoryClassLoader(fileManager.classes, TranslitMatcher.class.getClassLoader());
+        Class<?> matcherClass = loader.loadClass(className);
+        return (TranslitMatcher) matcherClass.getConstructor(TranslitDictionary.class).newInstance(dictionary);
+    }
+
+    /**
+     * Class path of the JVM extended by the location of the translit classes, which may be loaded
+     * by a class loader of a container
+     */
+    private static String getClassPath() {
+        StringBuilder classPath = new StringBuilder(System.getProperty("java.class.path", ""));
+        try {
+            CodeSource codeSource = TranslitMatcher.class.getProtectionDomain().getCodeSource();
+            if (codeSource != null) {
+                classPath.append(File.pathSeparator).append(new File(codeSource.getLocation().toURI()).getPath());
+            }
+        } catch (Exception e) {
+            // the class path of the JVM is used as is
+        }
+        return classPath.toString();
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject {
+
+        private final String source;
+
+        SourceFile(String className, String source) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    private static class ClassFile extends SimpleJavaFileObject {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        ClassFile(String className) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return bytes;
+        }
+    }
+
+    /**
+     * Keeps the compiled classes in memory
+     */
+    private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        private final Map<String, ClassFile> classes = new HashMap<String, ClassFile>();
+
+        MemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) throws IOException {
+            ClassFile file = new ClassFile(className);
+            classes.put(className, file);
+            return file;
+        }
+    }
+
+    private static class MemoryClassLoader extends ClassLoader {
+
+        private final Map<String, ClassFile> classes;
+
+        MemoryClassLoader(Map<String, ClassFile> classes, ClassLoader parent) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            ClassFile file = classes.get(name);
+            if (file == null) throw new ClassNotFoundException(name);
+            byte[] bytes = file.bytes.toByteArray();
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
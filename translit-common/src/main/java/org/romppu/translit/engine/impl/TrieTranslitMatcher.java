@@ -0,0 +1,250 @@
+package org.romppu.translit.engine.impl;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.engine.TranslitMatcher;
+import org.romppu.translit.engine.TranslitProfiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Default implementation of {@link TranslitMatcher}
+ * The TrieTranslitMatcher compiles words of both sides of a dictionary into two character tries. Every trie is
+ * flattened into a few primitive arrays, the edges of a node are sorted by character and looked up by binary search,
+ * so the match step costs O(length of the match) whatever the size of the dictionary is.
+ * A matcher compiled with a {@link TranslitProfiler} lays out the hot words first: the nodes are numbered depth
+ * first with the most hit subtree first, so the nodes of a hot word are adjacent in the arrays, and the edges of
+ * a node are ordered by hits and looked up by a linear scan, which stops early for the hot characters.
+ */
+public class TrieTranslitMatcher implements TranslitMatcher {
+
+    private final TranslitDictionary dictionary;
+    private final Trie[] tries = new Trie[TranslitDictionary.Side.values().length];
+
+    /**
+     * Compiles the specified {@see dictionary}. Later changes of the dictionary are not visible to the matcher.
+     *
+     * @param dictionary translit dictionary
+     */
+    public TrieTranslitMatcher(TranslitDictionary dictionary) {
+        this.dictionary = dictionary;
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            String[] words = new String[dictionary.getSize()];
+            for (int idx = 0; idx < words.length; idx++) {
+                words[idx] = dictionary.getValueAt(idx, side);
+            }
+            tries[side.ordinal()] = compile(words, null);
+        }
+    }
+
+    /**
+     * Compiles the specified {@see dictionary} in the order of the hits collected by the specified {@see profiler}.
+     * Later changes of the dictionary are not visible to the matcher.
+     *
+     * @param dictionary translit dictionary
+     * @param profiler   hits of the dictionary pairs
+     */
+    public TrieTranslitMatcher(TranslitDictionary dictionary, TranslitProfiler profiler) {
+        this.dictionary = dictionary;
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            String[] words = new String[dictionary.getSize()];
+            long[] weights = new long[words.length];
+            for (int idx = 0; idx < words.length; idx++) {
+                words[idx] = dictionary.getValueAt(idx, side);
+                weights[idx] = idx < profiler.getSize() ? profiler.getHits(idx, side) : 0;
+            }
+            tries[side.ordinal()] = compile(words, weights);
+        }
+    }
+
+    /**
+     * Compiles the specified words, the value of a word is its index in the array of its side
+     *
+     * @param dictionary dictionary returned by {@link #getDictionary()}
+     * @param words      words of every side, empty and null words are skipped
+     */
+    TrieTranslitMatcher(TranslitDictionary dictionary, String[][] words) {
+        this.dictionary = dictionary;
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            tries[side.ordinal()] = compile(words[side.ordinal()], null);
+        }
+    }
+
+    @Override
+    public int match(CharSequence text, int position, TranslitDictionary.Side side) {
+        Trie trie = tries[side.ordinal()];
+        int node = 0;
+        int result = -1;
+        for (int i = position; i < text.length(); i++) {
+            node = trie.child(node, text.charAt(i));
+            if (node < 0) break;
+            if (trie.values[node] >= 0) result = trie.values[node];
+        }
+        return result;
+    }
+
+    @Override
+    public TranslitDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns amount of trie nodes on the specified side
+     *
+     * @param side LEFT or RIGHT
+     * @return amount of nodes
+     */
+    public int getNodeCount(TranslitDictionary.Side side) {
+        return tries[side.ordinal()].values.length;
+    }
+
+    /**
+     * Returns the node reached from the specified {@see node} by the specified char, the root is the node 0
+     *
+     * @return node or -1
+     */
+    int child(TranslitDictionary.Side side, int node, char ch) {
+        return tries[side.ordinal()].child(node, ch);
+    }
+
+    /**
+     * Returns the value of the word which ends at the specified {@see node} or -1
+     */
+    int value(TranslitDictionary.Side side, int node) {
+        return tries[side.ordinal()].values[node];
+    }
+
+    private static Trie compile(String[] words, long[] weights) {
+        Node root = new Node();
+        int nodeCount = 1;
+        for (int idx = 0; idx < words.length; idx++) {
+            String word = words[idx];
+            if (word == null || word.isEmpty()) continue;
+            Node node = root;
+            for (int i = 0; i < word.length(); i++) {
+                Node child = node.children.get(word.charAt(i));
+                if (child == null) {
+                    child = new Node();
+                    child.label = word.charAt(i);
+                    node.children.put(child.label, child);
+                    nodeCount++;
+                }
+                node = child;
+            }
+            if (node.value < 0) node.value = idx;
+        }
+        List<Node> order = new ArrayList<Node>(nodeCount);
+        if (weights == null) {
+            order.add(root);
+            for (int n = 0; n < order.size(); n++) {
+                order.addAll(order.get(n).children.values());
+            }
+        } else {
+            weigh(root, weights);
+            List<Node> stack = new ArrayList<Node>();
+            stack.add(root);
+            while (!stack.isEmpty()) {
+                Node node = stack.remove(stack.size() - 1);
+                order.add(node);
+                List<Node> children = byWeight(node);
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.add(children.get(i));
+                }
+            }
+        }
+        for (int n = 0; n < order.size(); n++) {
+            order.get(n).number = n;
+        }
+        Trie trie = new Trie(nodeCount, weights != null);
+        int edge = 0;
+        for (int n = 0; n < nodeCount; n++) {
+            Node node = order.get(n);
+            trie.values[n] = node.value;
+            trie.firstEdge[n] = edge;
+            for (Node child : weights == null ? node.children.values() : byWeight(node)) {
+                trie.labels[edge] = child.label;
+                trie.targets[edge] = child.number;
+                edge++;
+            }
+        }
+        trie.firstEdge[nodeCount] = edge;
+        return trie;
+    }
+
+    /**
+     * Sums the weights of the words which end in the subtree of every node
+     */
+    private static long weigh(Node node, long[] weights) {
+        long weight = node.value >= 0 ? weights[node.value] : 0;
+        for (Node child : node.children.values()) {
+            weight += weigh(child, weights);
+        }
+        node.weight = weight;
+        return weight;
+    }
+
+    /**
+     * Returns the children of the node, the heaviest first, the children of the same weight in the character order
+     */
+    private static List<Node> byWeight(Node node) {
+        List<Node> children = new ArrayList<Node>(node.children.values());
+        Collections.sort(children, new Comparator<Node>() {
+            @Override
+            public int compare(Node o1, Node o2) {
+                return o1.weight != o2.weight ? (o1.weight > o2.weight ? -1 : 1) : o1.label - o2.label;
+            }
+        });
+        return children;
+    }
+
+    private static class Node {
+        private final TreeMap<Character, Node> children = new TreeMap<Character, Node>();
+        private int value = -1;
+        private char label;
+        private int number;
+        private long weight;
+    }
+
+    /**
+     * Flattened trie. Edges of the node n are stored in the range [firstEdge[n], firstEdge[n + 1]) of the
+     * {@see labels} and {@see targets} arrays, node 0 is the root. The edges are sorted by character unless
+     * the trie is ordered by weight.
+     */
+    private static class Trie {
+        private final int[] values;
+        private final int[] firstEdge;
+        private final char[] labels;
+        private final int[] targets;
+        private final boolean weighted;
+
+        private Trie(int nodeCount, boolean weighted) {
+            values = new int[nodeCount];
+            firstEdge = new int[nodeCount + 1];
+            labels = new char[nodeCount - 1];
+            targets = new int[nodeCount - 1];
+            this.weighted = weighted;
+        }
+
+        private int child(int node, char ch) {
+            if (weighted) {
+                for (int edge = firstEdge[node]; edge < firstEdge[node + 1]; edge++) {
+                    if (labels[edge] == ch) return targets[edge];
+                }
+                return -1;
+            }
+            int low = firstEdge[node];
+            int high = firstEdge[node + 1] - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char label = labels[mid];
+                if (label < ch) low = mid + 1;
+                else if (label > ch) high = mid - 1;
+                else return targets[mid];
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import org.romppu.translit.dictionary.CharCondition;
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.dictionary.impl.XmlTranslitDictionary;
+import org.romppu.translit.document.TranslitDocument;
+import org.romppu.translit.document.impl.DefaultTranslitDocument;
+import org.romppu.translit.document.impl.OffHeapTranslitDocument;
+import org.romppu.translit.document.impl.PersistentTranslitDocument;
+import org.romppu.translit.engine.TranslitEngine;
+
+import java.util.Random;
+
+/**
+ * Checks that all documents and the engine apply the before and after conditions of the pairs in the same way,
+ * also when the text is typed in parts or the document is bound to another dictionary, and that the documents
+ * agree after the edits inside of the text
+ *
+ * @author RP
+ */
+public class ContextConditionsTest {
+    private static final String ALPHABET = "\u0435\u0445\u0430\u043b\u043c ,";
+
+    public static void main(String... params) {
+        try {
+            XmlTranslitDictionary dictionary = new XmlTranslitDictionary("/dictionary_def.xml");
+            dictionary.removeAt(dictionary.indexOf("\u0435", TranslitDictionary.Side.LEFT));
+            dictionary.addPair("\u0435", "ye", CharCondition.WORD_BOUNDARY, null);
+            dictionary.addPair("\u0435", "e");
+            dictionary.removeAt(dictionary.indexOf("\u0445", TranslitDictionary.Side.LEFT));
+            dictionary.addPair("\u0445", "kh", null, CharCondition.WORD_BOUNDARY);
+            dictionary.addPair("\u0445", "h");
+            TranslitEngine engine = new TranslitEngine(dictionary);
+
+            String text = "\u0435\u043b\u044c, \u043c\u0435\u0445 \u0438 \u0435\u0445\u0430\u043b";
+            String expected = engine.transliterate(text, TranslitDictionary.Side.LEFT);
+            if (!expected.equals("yel', mekh i yehal")) {
+                throw new IllegalStateException("Conditions are not applied: " + expected);
+            }
+            check(DefaultTranslitDocument.create(dictionary, text, TranslitDictionary.Side.LEFT), engine,
+                    TranslitDictionary.Side.LEFT);
+            check(OffHeapTranslitDocument.create(engine, text, TranslitDictionary.Side.LEFT), engine,
+                    TranslitDictionary.Side.LEFT);
+            check(PersistentTranslitDocument.create(engine, text, TranslitDictionary.Side.LEFT), engine,
+                    TranslitDictionary.Side.LEFT);
+            check(DefaultTranslitDocument.create(dictionary, expected, TranslitDictionary.Side.RIGHT), engine,
+                    TranslitDictionary.Side.RIGHT);
+            System.out.println(expected);
+
+            XmlTranslitDictionary changed = new XmlTranslitDictionary("/dictionary_def.xml");
+            changed.removeAt(changed.indexOf("\u0435", TranslitDictionary.Side.LEFT));
+            changed.addPair("\u0435", "ye", CharCondition.WORD_BOUNDARY, null);
+            changed.addPair("\u0435", "e");
+            changed.removeAt(changed.indexOf("\u043c", TranslitDictionary.Side.LEFT));
+            changed.addPair("\u043c", "mm");
+            TranslitEngine changedEngine = new TranslitEngine(changed);
+            String reboundText = text + " \u0430\u043b\u0435\u043c";
+            TranslitDocument[] rebound = {
+                    DefaultTranslitDocument.create(dictionary, reboundText, TranslitDictionary.Side.LEFT),
+                    OffHeapTranslitDocument.create(engine, reboundText, TranslitDictionary.Side.LEFT),
+                    PersistentTranslitDocument.create(engine, reboundText, TranslitDictionary.Side.LEFT)
+            };
+            for (TranslitDocument document : rebound) {
+                document.rebind(changed, TranslitDictionary.Side.LEFT);
+                check(document, changedEngine, TranslitDictionary.Side.LEFT);
+            }
+
+            Random random = new Random(1);
+            TranslitDocument[] documents = {
+                    new DefaultTranslitDocument(dictionary),
+                    new OffHeapTranslitDocument(engine),
+                    new PersistentTranslitDocument(engine)
+            };
+            for (int edit = 0; edit < 100; edit++) {
+                String insert = randomText(random, 1 + random.nextInt(3));
+                for (TranslitDocument document : documents) {
+                    document.insertAt(document.getSize(), insert, TranslitDictionary.Side.LEFT);
+                    check(document, engine, TranslitDictionary.Side.LEFT);
+                }
+            }
+            for (int edit = 0; edit < 200; edit++) {
+                if (random.nextInt(3) == 0 && documents[0].getSize() > 0) {
+                    int position = random.nextInt(documents[0].getSize());
+                    for (TranslitDocument document : documents) {
+                        document.removeElements(position, 1);
+                    }
+                } else {
+                    int index = random.nextInt(documents[0].getSize() + 1);
+                    String insert = randomText(random, 1 + random.nextInt(3));
+                    for (TranslitDocument document : documents) {
+                        document.insertAt(index, insert, TranslitDictionary.Side.LEFT);
+                    }
+                }
+                String first = documents[0].getString(TranslitDictionary.Side.RIGHT);
+                for (TranslitDocument document : documents) {
+                    if (!document.getString(TranslitDictionary.Side.RIGHT).equals(first)) {
+                        throw new IllegalStateException(document.getClass().getSimpleName() + ": "
+                                + document.getString(TranslitDictionary.Side.RIGHT) + " != " + first);
+                    }
+                }
+            }
+            System.out.println(documents[0].getString(TranslitDictionary.Side.RIGHT));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private static void check(TranslitDocument document, TranslitEngine engine, TranslitDictionary.Side side)
+            throws Exception {
+        String expected = engine.transliterate(document.getString(side), side);
+        String actual = document.getString(side.invert());
+        if (!actual.equals(expected)) {
+            throw new IllegalStateException(document.getClass().getSimpleName() + ": " + actual + " != " + expected);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.dictionary.impl.LayeredTranslitDictionary;
+import org.romppu.translit.dictionary.impl.TextTranslitDictionary;
+import org.romppu.translit.dictionary.impl.XmlTranslitDictionary;
+import org.romppu.translit.document.TranslitDocument;
+import org.romppu.translit.document.impl.DefaultTranslitDocument;
+import org.romppu.translit.document.impl.OffHeapTranslitDocument;
+import org.romppu.translit.engine.TranslitEngine;
+
+/**
+ * Checks that all documents and the engine see the pairs of a layer instead of the overridden base pairs
+ *
+ * @author RP
+ */
+public class LayeredDictionaryTest {
+    public static void main(String... params) {
+        try {
+            XmlTranslitDictionary base = new XmlTranslitDictionary("/dictionary_def.xml");
+            TextTranslitDictionary layer = new TextTranslitDictionary();
+            layer.addPair("\u0449", "shch");
+            layer.addPair("\u0445", "kh");
+            LayeredTranslitDictionary dictionary = new LayeredTranslitDictionary(base, layer);
+            TranslitEngine engine = new TranslitEngine(dictionary);
+            String[] texts = {"\u0449\u0443\u043a\u0430 \u0445\u043e\u0440", "\u0429\u0438 \u0434\u0430 [\u0445\u0430\u0445\u0430] \u043f\u0438\u0449\u0430"};
+            for (String text : texts) {
+                String expected = engine.transliterate(text, TranslitDictionary.Side.LEFT);
+                check(DefaultTranslitDocument.create(dictionary, text, TranslitDictionary.Side.LEFT), expected);
+                check(OffHeapTranslitDocument.create(engine, text, TranslitDictionary.Side.LEFT), expected);
+                TranslitDocument rebound = DefaultTranslitDocument.create(base, text, TranslitDictionary.Side.LEFT);
+                rebound.rebind(dictionary, TranslitDictionary.Side.LEFT);
+                check(rebound, expected);
+                String back = engine.transliterate(expected, TranslitDictionary.Side.RIGHT);
+                TranslitDocument reverse = DefaultTranslitDocument.create(dictionary, expected, TranslitDictionary.Side.RIGHT);
+                if (!back.equals(reverse.getString(TranslitDictionary.Side.LEFT))) {
+                    throw new IllegalStateException(reverse.getString(TranslitDictionary.Side.LEFT) + " != " + back);
+                }
+                System.out.println(expected);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void check(TranslitDocument document, String expected) throws Exception {
+        String actual = document.getString(TranslitDictionary.Side.RIGHT);
+        if (!actual.equals(expected)) {
+            throw new IllegalStateException(document.getClass().getSimpleName() + ": " + actual + " != " + expected);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.dictionary.impl.XmlTranslitDictionary;
+import org.romppu.translit.engine.TranslitEngine;
+import org.romppu.translit.engine.TranslitMatcher;
+import org.romppu.translit.engine.TranslitProfiler;
+import org.romppu.translit.engine.impl.RuntimeTranslitMatcherCompiler;
+import org.romppu.translit.engine.impl.TrieTranslitMatcher;
+
+import java.util.Random;
+
+/**
+ * Compares the trie matcher with the trie compiled in the order of the profiled hits and with the matcher compiled
+ * at runtime
+ */
+public class MatcherBenchmark {
+
+    public static void main(String... params) {
+        try {
+            TranslitDictionary dictionary = new XmlTranslitDictionary("/dictionary_def.xml");
+            long start = System.nanoTime();
+            TranslitMatcher compiled = RuntimeTranslitMatcherCompiler.compile(dictionary);
+            System.out.println(compiled.getClass().getName() + " compiled in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+            TranslitEngine trieEngine = new TranslitEngine(new TrieTranslitMatcher(dictionary));
+            TranslitEngine compiledEngine = new TranslitEngine(compiled);
+
+            String alphabet = "abcdefghijklmnopqrstuvwxyzSCHY' .";
+            Random random = new Random(0);
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 2000000; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String source = text.toString();
+            TranslitProfiler profiler = new TranslitProfiler(dictionary.getSize());
+            new TranslitEngine(new TrieTranslitMatcher(dictionary), profiler)
+                    .transliterate(source.substring(0, 100000), TranslitDictionary.Side.RIGHT);
+            System.out.println("hot indexes " + profiler.getHotIndexes(TranslitDictionary.Side.RIGHT));
+            System.out.println("unmatched characters " + profiler.getCharacterHits(TranslitDictionary.Side.RIGHT));
+            TranslitEngine profiledEngine = new TranslitEngine(new TrieTranslitMatcher(dictionary, profiler));
+            String expected = trieEngine.transliterate(source, TranslitDictionary.Side.RIGHT);
+            if (!expected.equals(compiledEngine.transliterate(source, TranslitDictionary.Side.RIGHT))
+                    || !expected.equals(profiledEngine.transliterate(source, TranslitDictionary.Side.RIGHT))) {
+                throw new IllegalStateException("Results differ");
+            }
+            for (int round = 0; round < 10; round++) {
+                long trie = time(trieEngine, source);
+                long profiled = time(profiledEngine, source);
+                long generated = time(compiledEngine, source);
+                System.out.println("round " + round + ": trie " + trie + " ms, profiled trie " + profiled
+                        + " ms, compiled " + generated + " ms");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long time(TranslitEngine engine, String text) {
+        long start = System.nanoTime();
+        engine.transliterate(text, TranslitDictionary.Side.RIGHT);
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
@@ -0,0 +1,89 @@
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.dictionary.impl.XmlTranslitDictionary;
+import org.romppu.translit.document.TranslitDocument;
+import org.romppu.translit.document.impl.DefaultTranslitDocument;
+import org.romppu.translit.document.impl.PersistentTranslitDocument;
+import org.romppu.translit.engine.TranslitEngine;
+
+import java.util.Random;
+
+/**
+ * Applies the same random edits to a PersistentTranslitDocument and a DefaultTranslitDocument and checks that they
+ * agree, also checks that a snapshot is not changed by the later edits and that revert restores it
+ *
+ * @author RP
+ */
+public class PersistentTranslitDocumentTest {
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzSCHY'`[] .";
+
+    public static void main(String... params) {
+        try {
+            XmlTranslitDictionary dictionary = new XmlTranslitDictionary("/dictionary_def.xml");
+            TranslitEngine engine = new TranslitEngine(dictionary);
+            Random random = new Random(1);
+            for (int round = 0; round < 20; round++) {
+                String text = randomText(random, random.nextInt(300));
+                DefaultTranslitDocument expected = DefaultTranslitDocument.create(dictionary, text,
+                        TranslitDictionary.Side.RIGHT);
+                PersistentTranslitDocument actual = PersistentTranslitDocument.create(engine, text,
+                        TranslitDictionary.Side.RIGHT);
+                check(actual, expected);
+                PersistentTranslitDocument snapshot = actual.snapshot();
+                String snapshotText = snapshot.getMarkedString(TranslitDictionary.Side.LEFT);
+                for (int edit = 0; edit < 50; edit++) {
+                    if (expected.getSize() > 0 && random.nextInt(3) == 0) {
+                        int position = random.nextInt(expected.getSize());
+                        int amount = 1 + random.nextInt(Math.min(5, expected.getSize() - position));
+                        expected.removeElements(position, amount);
+                        actual.removeElements(position, amount);
+                    } else {
+                        int index = random.nextInt(expected.getSize() + 1);
+                        String insert = randomText(random, 1 + random.nextInt(8));
+                        expected.insertAt(index, insert, TranslitDictionary.Side.RIGHT);
+                        actual.insertAt(index, insert, TranslitDictionary.Side.RIGHT);
+                    }
+                    check(actual, expected);
+                }
+                if (!snapshotText.equals(snapshot.getMarkedString(TranslitDictionary.Side.LEFT))) {
+                    throw new IllegalStateException("Snapshot was changed by the later edits");
+                }
+                actual.revert(snapshot);
+                if (!snapshotText.equals(actual.getMarkedString(TranslitDictionary.Side.LEFT))) {
+                    throw new IllegalStateException("Revert did not restore the snapshot");
+                }
+            }
+            System.out.println(PersistentTranslitDocument.create(engine, "SCH'i da kasha - pisch'a nasha.",
+                    TranslitDictionary.Side.RIGHT).getString(TranslitDictionary.Side.LEFT));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private static void check(TranslitDocument actual, TranslitDocument expected) throws Exception {
+        if (actual.getSize() != expected.getSize()) {
+            throw new IllegalStateException("Size " + actual.getSize() + " != " + expected.getSize());
+        }
+        for (TranslitDictionary.Side side : TranslitDictionary.Side.values()) {
+            String expectedText = expected.getString(side);
+            if (!actual.getString(side).equals(expectedText)) {
+                throw new IllegalStateException(actual.getString(side) + " != " + expectedText);
+            }
+            if (!actual.getMarkedString(side).equals(expected.getMarkedString(side))) {
+                throw new IllegalStateException(actual.getMarkedString(side) + " != " + expected.getMarkedString(side));
+            }
+            for (int position = 0; position <= expectedText.length(); position++) {
+                if (actual.convertToElementIndex(position, side) != expected.convertToElementIndex(position, side)) {
+                    throw new IllegalStateException("Element index of " + position + " in " + expectedText);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.dictionary.impl.XmlTranslitDictionary;
+import org.romppu.translit.document.impl.DefaultTranslitDocument;
+import org.romppu.translit.engine.TranslitEngine;
+import org.romppu.translit.engine.TranslitOffsetMap;
+
+import java.util.Random;
+
+/**
+ * Checks that the offset map of the engine converts the positions of every element of a DefaultTranslitDocument
+ * of the same text in both directions
+ *
+ * @author RP
+ */
+public class TranslitOffsetMapTest {
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzSCHY'` .";
+
+    public static void main(String... params) {
+        try {
+            XmlTranslitDictionary dictionary = new XmlTranslitDictionary("/dictionary_def.xml");
+            TranslitEngine engine = new TranslitEngine(dictionary);
+            Random random = new Random(1);
+            int records = 0;
+            for (int round = 0; round < 200; round++) {
+                String text = randomText(random, random.nextInt(200));
+                StringBuilder out = new StringBuilder();
+                TranslitOffsetMap map = engine.transliterateWithOffsets(text, TranslitDictionary.Side.RIGHT, out);
+                DefaultTranslitDocument document = DefaultTranslitDocument.create(dictionary, text,
+                        TranslitDictionary.Side.RIGHT);
+                if (!out.toString().equals(document.getString(TranslitDictionary.Side.LEFT))) {
+                    throw new IllegalStateException(out + " != " + document.getString(TranslitDictionary.Side.LEFT));
+                }
+                for (int i = 0; i <= document.getSize(); i++) {
+                    int source = document.convertToTextPosition(0, i, TranslitDictionary.Side.RIGHT);
+                    int target = document.convertToTextPosition(0, i, TranslitDictionary.Side.LEFT);
+                    if (map.toTarget(source) != target || map.toSource(target) != source) {
+                        throw new IllegalStateException("Element " + i + " of " + text + ": " + source + " -> "
+                                + map.toTarget(source) + ", " + target + " -> " + map.toSource(target));
+                    }
+                }
+                records += map.getSize();
+            }
+            StringBuilder out = new StringBuilder();
+            TranslitOffsetMap map = engine.transliterateWithOffsets("SCH'i da kasha", TranslitDictionary.Side.RIGHT, out);
+            System.out.println(out + ": kasha " + "SCH'i da kasha".indexOf("kasha") + " -> "
+                    + map.toTarget("SCH'i da kasha".indexOf("kasha")) + ", records " + records);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,275 @@
+package org.romppu.translit.flow;
+
+import org.romppu.translit.TranslitDocumentException;
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.document.TranslitDocument;
+import org.romppu.translit.document.impl.PersistentTranslitDocument;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread safe {@link TranslitDocument} for one writer and many readers, e.g. an editor and the background threads
+ * which render, export or search its content. The content is kept by a {@link PersistentTranslitDocument}, every
+ * change of it is made under the write lock of a {@link StampedLock}. A read takes an O(1) snapshot of the content
+ * without any lock and keeps it only if no change has happened meanwhile, otherwise the snapshot is taken again under
+ * the read lock. The snapshot is immutable, so the read itself runs without a lock, the readers do not block each
+ * other nor the writer and a reader never sees a half applied {@link Mutation}.
+ * Only a persistent document is accepted: a mutable document, e.g. the Vector based DefaultTranslitDocument, is not
+ * safe to read during a write and would take its own monitor on every read anyway.
+ * A read which consists of several calls, e.g. {@link #convertToElementIndex} followed by {@link #getElement}, is
+ * consistent only if it is made by {@link #read(ReadAction)} or on one {@link #snapshot()}.
+ * A large insert is parsed outside of the lock: {@link #prepareInsert} and {@link #parseMutation} may be called by
+ * any thread, {@link #applyMutation} fails if the document has been changed after the mutation was prepared.
+ */
+public class ConcurrentTranslitDocument extends TranslitDocument {
+
+    private final PersistentTranslitDocument document;
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Creates a new empty document with the specified {@see dictionary}
+     *
+     * @param dictionary translit dictionary
+     */
+    public ConcurrentTranslitDocument(TranslitDictionary dictionary) {
+        this(new PersistentTranslitDocument(dictionary));
+    }
+
+    /**
+     * Creates a document which guards the specified {@see document}, the document must not be changed directly
+     * afterwards
+     *
+     * @param document document which keeps the content
+     */
+    public ConcurrentTranslitDocument(PersistentTranslitDocument document) {
+        this.document = document;
+    }
+
+    /**
+     * Returns an immutable snapshot of the current content
+     *
+     * @return snapshot
+     */
+    public PersistentTranslitDocument snapshot() {
+        long stamp = lock.tryOptimisticRead();
+        PersistentTranslitDocument snapshot = document.snapshot();
+        if (lock.validate(stamp)) return snapshot;
+        stamp = lock.readLock();
+        try {
+            return document.snapshot();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Runs the specified {@see action} on a snapshot of the document, all calls of the action see the same content
+     *
+     * @param action reads the document
+     * @return result of the action
+     * @throws TranslitDocumentException if the action fails
+     */
+    public <T> T read(ReadAction<T> action) throws TranslitDocumentException {
+        return action.read(snapshot());
+    }
+
+    /**
+     * Restores the content of the specified {@see snapshot} of this document, e.g. to undo the changes made after it
+     *
+     * @param snapshot snapshot taken by {@link #snapshot()}
+     */
+    public void revert(PersistentTranslitDocument snapshot) {
+        long stamp = lock.writeLock();
+        try {
+            document.revert(snapshot);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public String getString(TranslitDictionary.Side side) throws TranslitDocumentException {
+        return snapshot().getString(side);
+    }
+
+    @Override
+    public String getString(List<Element> elementList, TranslitDictionary.Side side) throws TranslitDocumentException {
+        return snapshot().getString(elementList, side);
+    }
+
+    @Override
+    public String getString(int start, int end, TranslitDictionary.Side side) throws TranslitDocumentException {
+        return snapshot().getString(start, end, side);
+    }
+
+    @Override
+    public void writeString(int start, int end, TranslitDictionary.Side side, Appendable out)
+            throws TranslitDocumentException, IOException {
+        snapshot().writeString(start, end, side, out);
+    }
+
+    @Override
+    public int writeString(int start, int end, TranslitDictionary.Side side, CharBuffer buffer)
+            throws TranslitDocumentException {
+        return snapshot().writeString(start, end, side, buffer);
+    }
+
+    @Override
+    public String getMarkedString(TranslitDictionary.Side side) throws TranslitDocumentException {
+        return snapshot().getMarkedString(side);
+    }
+
+    @Override
+    public Element getElement(int pos) throws TranslitDocumentException {
+        return snapshot().getElement(pos);
+    }
+
+    @Override
+    public TranslitDictionary getDictionary() {
+        return snapshot().getDictionary();
+    }
+
+    @Override
+    public boolean isTranslitAt(int idx) throws TranslitDocumentException {
+        return snapshot().isTranslitAt(idx);
+    }
+
+    @Override
+    public int getSize() {
+        return snapshot().getSize();
+    }
+
+    @Override
+    public int convertToElementIndex(int position, TranslitDictionary.Side side) {
+        return snapshot().convertToElementIndex(position, side);
+    }
+
+    @Override
+    public int convertToTextPosition(int startIndex, int indexToConvert, TranslitDictionary.Side side) {
+        return snapshot().convertToTextPosition(startIndex, indexToConvert, side);
+    }
+
+    @Override
+    public int getModificationCount() {
+        long stamp = lock.tryOptimisticRead();
+        int count = document.getModificationCount();
+        if (lock.validate(stamp)) return count;
+        stamp = lock.readLock();
+        try {
+            return document.getModificationCount();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Collects the state of the document which is needed to parse the inserted text under the read lock
+     */
+    @Override
+    public Mutation prepareInsert(int index, String text, TranslitDictionary.Side side)
+            throws TranslitDocumentException {
+        long stamp = lock.readLock();
+        try {
+            return document.prepareInsert(index, text, side);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Parses the text of the specified mutation without any lock
+     */
+    @Override
+    public void parseMutation(Mutation mutation) {
+        document.parseMutation(mutation);
+    }
+
+    @Override
+    public void applyMutation(Mutation mutation) throws TranslitDocumentException {
+        long stamp = lock.writeLock();
+        try {
+            document.applyMutation(mutation);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Mutation insertAt(int index, String text, TranslitDictionary.Side side) throws TranslitDocumentException {
+        long stamp = lock.writeLock();
+        try {
+            return document.insertAt(index, text, side);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void setString(String string, TranslitDictionary.Side side) throws TranslitDocumentException {
+        long stamp = lock.writeLock();
+        try {
+            document.setString(string, side);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void insertStringAt(int index, String text, TranslitDictionary.Side side)
+            throws TranslitDocumentException {
+        long stamp = lock.writeLock();
+        try {
+            document.insertStringAt(index, text, side);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void rebind(TranslitDictionary dictionary, TranslitDictionary.Side side) throws TranslitDocumentException {
+        long stamp = lock.writeLock();
+        try {
+            document.rebind(dictionary, side);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void removeElements(int position, int amount) {
+        long stamp = lock.writeLock();
+        try {
+            document.removeElements(position, amount);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            document.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Read of the document made by {@link #read(ReadAction)}
+     */
+    public interface ReadAction<T> {
+
+        /**
+         * Reads the specified {@see document}
+         *
+         * @param document immutable snapshot of the content
+         * @return result of the read
+         * @throws TranslitDocumentException if the read fails
+         */
+        public T read(TranslitDocument document) throws TranslitDocumentException;
+    }
+}
@@ -0,0 +1,131 @@
+package org.romppu.translit.flow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the lines of a byte range of a file. The range is split in the middle, the split point is moved
+ * to the beginning of the next line, so every part of a parallel stream reads whole lines and no line is read twice.
+ * The bytes are read by positional reads of the shared {@link FileChannel}, so the parts may be traversed by
+ * different threads at once; every part reuses its own buffers.
+ * The lines are split at <code>\n</code> and a trailing <code>\r</code> is dropped as by
+ * {@link java.io.BufferedReader#readLine()}. The charset must encode <code>\n</code> as the single byte which does not
+ * occur in other characters, e.g. UTF-8, US-ASCII or ISO-8859-1.
+ */
+public class LineSpliterator implements Spliterator<String> {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MIN_SPLIT_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private byte[] line = new byte[256];
+    private long position;
+    private final long end;
+
+    /**
+     * @param channel file channel, it is not closed by the spliterator
+     * @param charset charset of the file
+     * @param start   position of the beginning of the first line
+     * @param end     position after the end of the last line
+     */
+    public LineSpliterator(FileChannel channel, Charset charset, long start, long end) {
+        this.channel = channel;
+        this.charset = charset;
+        this.position = start;
+        this.end = end;
+        buffer.limit(0);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        if (position >= end) return false;
+        int length = 0;
+        boolean terminated = false;
+        while (position < end) {
+            if (!buffer.hasRemaining() && !fill(position)) break;
+            byte b = buffer.get();
+            position++;
+            if (b == '\n') {
+                terminated = true;
+                break;
+            }
+            if (length == line.length) line = Arrays.copyOf(line, length * 2);
+            line[length++] = b;
+        }
+        if (terminated || length > 0) {
+            if (length > 0 && line[length - 1] == '\r') length--;
+            action.accept(new String(line, 0, length, charset));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+        if (end - position < MIN_SPLIT_SIZE) return null;
+        long split = nextLine(position + (end - position) / 2);
+        if (split < 0 || split >= end) return null;
+        LineSpliterator prefix = new LineSpliterator(channel, charset, position, split);
+        position = split;
+        buffer.limit(0);
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - position;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * Reads the bytes at the specified {@see from} position into the buffer
+     *
+     * @return false if the end of the file is reached
+     */
+    private boolean fill(long from) {
+        buffer.clear();
+        if (end - from < buffer.capacity()) buffer.limit((int) (end - from));
+        try {
+            int read = channel.read(buffer, from);
+            buffer.flip();
+            return read > 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the position after the first <code>\n</code> at or after the specified {@see from} position,
+     * -1 if the range has no more lines
+     */
+    private long nextLine(long from) {
+        ByteBuffer scan = ByteBuffer.allocate(BUFFER_SIZE);
+        long current = from;
+        try {
+            while (current < end) {
+                scan.clear();
+                int read = channel.read(scan, current);
+                if (read <= 0) return -1;
+                for (int i = 0; i < read; i++) {
+                    if (scan.get(i) == '\n') return current + i + 1;
+                }
+                current += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,246 @@
+package org.romppu.translit.flow;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.engine.TranslitEngine;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stage of a reactive pipeline which transliterates the published text by the {@link TranslitEngine}.
+ * In the chunk mode the items are parts of one text, e.g. buffers read from a socket: characters which may be
+ * a beginning of a dictionary word are kept until the following chunk arrives, so the concatenated result is the
+ * same as transliteration of the whole text at once (see {@link org.romppu.translit.engine.TranslitWriter}).
+ * A chunk which is kept entirely produces no item, the rest of the text is published when the upstream completes.
+ * In the record mode every item is an independent text, e.g. a line or a name, and produces exactly one item.
+ * The processor honours the demand of its subscriber: the upstream is requested no more items than the subscriber
+ * has requested and not yet received, so a slow subscriber slows down the publisher.
+ * The processor has a single subscriber, a second one receives an {@link IllegalStateException}.
+ */
+public class TranslitProcessor implements Flow.Processor<CharSequence, String> {
+
+    private static final String ERR_SUBSCRIBED = "Processor already has a subscriber";
+    private static final String ERR_REQUEST = "Non-positive request {0}";
+
+    private final TranslitEngine engine;
+    private final TranslitDictionary.Side side;
+    private final boolean records;
+    private final int lookahead;
+    private final StringBuilder pending = new StringBuilder();
+    private final Queue<String> queue = new ConcurrentLinkedQueue<String>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong outstanding = new AtomicLong();
+    private int start;
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super String> downstream;
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+
+    /**
+     * Creates a processor of chunks of one text
+     *
+     * @param engine translit engine
+     * @param side   text will be transliterated from the specified side into an opposite side
+     */
+    public TranslitProcessor(TranslitEngine engine, TranslitDictionary.Side side) {
+        this(engine, side, false);
+    }
+
+    /**
+     * @param engine  translit engine
+     * @param side    text will be transliterated from the specified side into an opposite side
+     * @param records true if every item is an independent text, false if the items are chunks of one text
+     */
+    public TranslitProcessor(TranslitEngine engine, TranslitDictionary.Side side, boolean records) {
+        this.engine = engine;
+        this.side = side;
+        this.records = records;
+        this.lookahead = Math.max(1, engine.getLongestWordLen(side)) + 1;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        if (subscriber == null) throw new NullPointerException();
+        synchronized (this) {
+            if (downstream != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException(ERR_SUBSCRIBED));
+                return;
+            }
+            downstream = subscriber;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException(MessageFormat.format(ERR_REQUEST, n)));
+                    return;
+                }
+                add(requested, n);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                Flow.Subscription subscription = upstream;
+                if (subscription != null) subscription.cancel();
+                drain();
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null || cancelled) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(CharSequence item) {
+        if (item == null) throw new NullPointerException();
+        if (done) return;
+        outstanding.decrementAndGet();
+        try {
+            if (records) {
+                queue.offer(engine.transliterate(item, side));
+            } else {
+                pending.append(item);
+                process(pending.length() - lookahead + 1);
+            }
+        } catch (RuntimeException e) {
+            upstream.cancel();
+            fail(e);
+            return;
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (done) return;
+        fail(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (done) return;
+        try {
+            if (!records) process(pending.length());
+        } catch (RuntimeException e) {
+            fail(e);
+            return;
+        }
+        done = true;
+        drain();
+    }
+
+    /**
+     * Transliterates the kept characters up to the specified {@see limit} and queues the result
+     */
+    private void process(int limit) {
+        if (limit <= start) return;
+        StringBuilder out = new StringBuilder();
+        int processed;
+        try {
+            processed = engine.transliterate(pending, start, limit, side, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        pending.delete(0, processed - 1);
+        start = 1;
+        if (out.length() > 0) queue.offer(out.toString());
+    }
+
+    private void fail(Throwable throwable) {
+        error = throwable;
+        done = true;
+        drain();
+    }
+
+    /**
+     * Passes the queued items to the subscriber and requests more items from the upstream, the method may be
+     * called by any thread, the work is done by one thread at once
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) return;
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super String> subscriber = downstream;
+            if (cancelled) {
+                queue.clear();
+            } else if (subscriber != null) {
+                Throwable throwable = error;
+                if (throwable != null) {
+                    queue.clear();
+                    cancelled = true;
+                    Flow.Subscription subscription = upstream;
+                    if (subscription != null) subscription.cancel();
+                    subscriber.onError(throwable);
+                } else {
+                    long emitted = 0;
+                    long demand = requested.get();
+                    String item;
+                    while (emitted < demand && !cancelled && (item = queue.poll()) != null) {
+                        subscriber.onNext(item);
+                        emitted++;
+                    }
+                    if (emitted > 0 && demand != Long.MAX_VALUE) requested.addAndGet(-emitted);
+                    if (!cancelled) {
+                        if (done && queue.isEmpty()) {
+                            cancelled = true;
+                            subscriber.onComplete();
+                        } else {
+                            requestUpstream();
+                        }
+                    }
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Requests as many items as are demanded and not queued once the previous request is fulfilled. Every item
+     * produces one queued item at most, so the queue never exceeds the demand.
+     */
+    private void requestUpstream() {
+        Flow.Subscription subscription = upstream;
+        if (subscription == null || done || outstanding.get() > 0) return;
+        long n = requested.get() - queue.size();
+        if (n <= 0) return;
+        outstanding.set(n);
+        subscription.request(n);
+    }
+
+    private static void add(AtomicLong counter, long n) {
+        long current;
+        long updated;
+        do {
+            current = counter.get();
+            if (current == Long.MAX_VALUE) return;
+            updated = current + n;
+            if (updated < 0) updated = Long.MAX_VALUE;
+        } while (!counter.compareAndSet(current, updated));
+    }
+}
@@ -0,0 +1,200 @@
+package org.romppu.translit.flow;
+
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.engine.TranslitEngine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Integration of the {@link TranslitEngine} with {@link java.util.stream}. The engine is thread safe and keeps no
+ * state of a text, so one engine serves all threads of a parallel stream; the functions returned here reuse one
+ * builder per thread or per collector container, no document is created per line.
+ * <pre>
+ * try (Stream&lt;String&gt; lines = TranslitStreams.lines(path, StandardCharsets.UTF_8)) {
+ *     String result = lines.parallel().collect(TranslitStreams.joining(engine, Side.RIGHT, "\n"));
+ * }
+ * </pre>
+ */
+public class TranslitStreams {
+
+    private static final String ERR_CHARSET = "Charset {0} does not encode line feed as a single byte";
+
+    private TranslitStreams() {
+    }
+
+    /**
+     * Returns a function which transliterates a text, e.g. for {@link Stream#map(Function)}
+     *
+     * @param engine translit engine
+     * @param side   text will be transliterated from the specified side into an opposite side
+     * @return transliteration function
+     */
+    public static Function<CharSequence, String> mapping(final TranslitEngine engine,
+                                                        final TranslitDictionary.Side side) {
+        final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+            @Override
+            protected StringBuilder initialValue() {
+                return new StringBuilder();
+            }
+        };
+        return new Function<CharSequence, String>() {
+            @Override
+            public String apply(CharSequence text) {
+                StringBuilder builder = builders.get();
+                builder.setLength(0);
+                append(engine, side, text, builder);
+                return builder.toString();
+            }
+        };
+    }
+
+    /**
+     * Returns a collector which transliterates the texts and joins the result by the specified {@see delimiter}
+     *
+     * @param engine    translit engine
+     * @param side      text will be transliterated from the specified side into an opposite side
+     * @param delimiter delimiter of the texts, e.g. a line separator
+     * @return collector of the transliterated text
+     */
+    public static Collector<CharSequence, ?, String> joining(final TranslitEngine engine,
+                                                             final TranslitDictionary.Side side,
+                                                             final CharSequence delimiter) {
+        return new TranslitCollector(engine, side, delimiter);
+    }
+
+    /**
+     * Returns the lines of the specified file as a stream which is split at line boundaries if it runs in parallel.
+     * The stream must be closed to close the file.
+     *
+     * @param path    file path
+     * @param charset charset of the file, see {@link LineSpliterator}
+     * @return stream of lines
+     * @throws IOException if the file cannot be opened
+     */
+    public static Stream<String> lines(Path path, Charset charset) throws IOException {
+        byte[] lineFeed = "\n".getBytes(charset);
+        if (lineFeed.length != 1 || lineFeed[0] != '\n') {
+            throw new IllegalArgumentException(MessageFormat.format(ERR_CHARSET, charset));
+        }
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            LineSpliterator spliterator = new LineSpliterator(channel, charset, 0, channel.size());
+            return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void append(TranslitEngine engine, TranslitDictionary.Side side, CharSequence text,
+                               StringBuilder builder) {
+        try {
+            engine.transliterate(text, side, builder);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Collector whose container is a builder of the transliterated text, the first element of a container is not
+     * preceded by the delimiter
+     */
+    private static class TranslitCollector implements Collector<CharSequence, TranslitCollector.Container, String> {
+
+        private final TranslitEngine engine;
+        private final TranslitDictionary.Side side;
+        private final CharSequence delimiter;
+
+        private TranslitCollector(TranslitEngine engine, TranslitDictionary.Side side, CharSequence delimiter) {
+            this.engine = engine;
+            this.side = side;
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        public Supplier<Container> supplier() {
+            return new Supplier<Container>() {
+                @Override
+                public Container get() {
+                    return new Container();
+                }
+            };
+        }
+
+        @Override
+        public BiConsumer<Container, CharSequence> accumulator() {
+            return new BiConsumer<Container, CharSequence>() {
+                @Override
+                public void accept(Container container, CharSequence text) {
+                    if (container.empty) {
+                        container.empty = false;
+                    } else {
+                        container.builder.append(delimiter);
+                    }
+                    append(engine, side, text, container.builder);
+                }
+            };
+        }
+
+        @Override
+        public BinaryOperator<Container> combiner() {
+            return new BinaryOperator<Container>() {
+                @Override
+                public Container apply(Container left, Container right) {
+                    if (right.empty) return left;
+                    if (left.empty) return right;
+                    left.builder.append(delimiter).append(right.builder);
+                    return left;
+                }
+            };
+        }
+
+        @Override
+        public Function<Container, String> finisher() {
+            return new Function<Container, String>() {
+                @Override
+                public String apply(Container container) {
+                    return container.builder.toString();
+                }
+            };
+        }
+
+        @Override
+        public Set<Characteristics> characteristics() {
+            return Collections.unmodifiableSet(EnumSet.noneOf(Characteristics.class));
+        }
+
+        private static class Container {
+            private final StringBuilder builder = new StringBuilder();
+            private boolean empty = true;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.dictionary.impl.XmlTranslitDictionary;
+import org.romppu.translit.document.impl.DefaultTranslitDocument;
+import org.romppu.translit.engine.TranslitEngine;
+import org.romppu.translit.flow.TranslitProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes texts split into chunks at every position, also inside of dictionary words like <code>sch'</code>,
+ * and checks that the concatenated output of the processor agrees with the engine and DefaultTranslitDocument,
+ * in the record mode every item must agree separately
+ *
+ * @author RP
+ */
+public class TranslitProcessorTest {
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzSCHY'`[] .";
+
+    public static void main(String... params) {
+        try {
+            XmlTranslitDictionary dictionary = new XmlTranslitDictionary("/dictionary_def.xml");
+            TranslitEngine engine = new TranslitEngine(dictionary);
+            String text = "SCH'i da kasha - pisch'a nasha. sch' zh'";
+            String expected = engine.transliterate(text, TranslitDictionary.Side.RIGHT);
+            String document = DefaultTranslitDocument.create(dictionary, text, TranslitDictionary.Side.RIGHT)
+                    .getString(TranslitDictionary.Side.LEFT);
+            if (!expected.equals(document)) {
+                throw new IllegalStateException(expected + " != " + document);
+            }
+            for (int split = 0; split <= text.length(); split++) {
+                List<String> chunks = new ArrayList<String>();
+                chunks.add(text.substring(0, split));
+                chunks.add(text.substring(split));
+                check(engine, chunks, false, expected);
+            }
+            Random random = new Random(1);
+            for (int round = 0; round < 100; round++) {
+                String randomText = randomText(random, random.nextInt(200));
+                List<String> chunks = new ArrayList<String>();
+                for (int i = 0; i < randomText.length(); ) {
+                    int length = Math.min(randomText.length() - i, 1 + random.nextInt(5));
+                    chunks.add(randomText.substring(i, i + length));
+                    i += length;
+                }
+                check(engine, chunks, false, engine.transliterate(randomText, TranslitDictionary.Side.RIGHT));
+            }
+            List<String> records = new ArrayList<String>();
+            StringBuilder expectedRecords = new StringBuilder();
+            for (String record : text.split(" ")) {
+                records.add(record);
+                expectedRecords.append(engine.transliterate(record, TranslitDictionary.Side.RIGHT)).append('|');
+            }
+            check(engine, records, true, expectedRecords.toString());
+            System.out.println(expected);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private static void check(TranslitEngine engine, List<String> chunks, final boolean records, String expected)
+            throws Exception {
+        SubmissionPublisher<CharSequence> publisher = new SubmissionPublisher<CharSequence>();
+        TranslitProcessor processor = new TranslitProcessor(engine, TranslitDictionary.Side.RIGHT, records);
+        publisher.subscribe(processor);
+        final StringBuilder result = new StringBuilder();
+        final Throwable[] error = new Throwable[1];
+        final CountDownLatch completed = new CountDownLatch(1);
+        processor.subscribe(new Flow.Subscriber<String>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String item) {
+                result.append(item);
+                if (records) result.append('|');
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error[0] = throwable;
+                completed.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+        for (String chunk : chunks) {
+            publisher.submit(chunk);
+        }
+        publisher.close();
+        if (!completed.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Processor did not complete " + chunks);
+        }
+        if (error[0] != null) {
+            throw new IllegalStateException(error[0]);
+        }
+        if (!result.toString().equals(expected)) {
+            throw new IllegalStateException(chunks + ": " + result + " != " + expected);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package org.romppu.translit.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.romppu.translit.dictionary.TranslitDictionary;
+import org.romppu.translit.dictionary.TranslitDictionaryFactory;
+import org.romppu.translit.engine.TranslitEngine;
+import org.romppu.translit.engine.TranslitWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Small HTTP/1.1 server which exposes the {@link TranslitEngine} to other processes.
+ * <ul>
+ * <li><code>POST /transliterate?side=RIGHT</code> - transliterates the request body</li>
+ * <li><code>POST /batch?side=RIGHT</code> - transliterates every line of the request body separately</li>
+ * <li><code>POST /reload[?dictionary=param]</code> - loads the dictionary again and replaces the engine, only the
+ * dictionary of the server and the ones allowed by {@link #allowDictionary(String)} may be loaded</li>
+ * </ul>
+ * Request and response bodies are UTF-8 text and are streamed, the whole body is never kept in memory.
+ * All requests share one immutable engine, the reload replaces it atomically, so requests in progress finish
+ * with the old dictionary. The module is built for Java 1.7, so the virtual thread executor is looked up at run time:
+ * on a Java 21 or newer runtime every exchange is handled by its own virtual thread, on older runtimes by a cached
+ * thread pool of platform threads, {@link #isVirtualThreads()} tells which one is in use.
+ * <p>
+ * {@link #main(String...)} prints the address and the executor when the server is started, the message is not
+ * printed if the system property <code>org.romppu.translit.server.TranslitServer.quiet</code> is <code>true</code>.
+ */
+public class TranslitServer {
+
+    public static final String CONTEXT_TRANSLITERATE = "/transliterate";
+    public static final String CONTEXT_BATCH = "/batch";
+    public static final String CONTEXT_RELOAD = "/reload";
+    public static final String PARAM_SIDE = "side";
+    public static final String PARAM_DICTIONARY = "dictionary";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_PORT = 8787;
+    private static final String ERR_NOT_ALLOWED = "Dictionary {0} is not allowed";
+    private static final String MSG_STARTED = "Translit server is listening on {0}, exchanges are handled by {1}";
+    private static final String QUIET_PROPERTY = TranslitServer.class.getName() + ".quiet";
+
+    private final AtomicReference<TranslitEngine> engine = new AtomicReference<TranslitEngine>();
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final Set<String> allowedDictionaries = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile String dictionaryParam;
+
+    /**
+     * Creates a new server on the specified {@see address} with the specified {@see engine}
+     *
+     * @param address local address to bind
+     * @param engine  translit engine shared by all requests
+     * @throws IOException if the address cannot be bound
+     */
+    public TranslitServer(InetSocketAddress address, TranslitEngine engine) throws IOException {
+        this.engine.set(engine);
+        this.dictionaryParam = engine.getDictionary().getInitialParam();
+        if (dictionaryParam != null) allowedDictionaries.add(dictionaryParam);
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        virtualThreads = virtualExecutor != null;
+        executor = virtualThreads ? virtualExecutor : Executors.newCachedThreadPool();
+        httpServer = HttpServer.create(address, 0);
+        httpServer.setExecutor(executor);
+        httpServer.createContext(CONTEXT_TRANSLITERATE, new TransliterateHandler());
+        httpServer.createContext(CONTEXT_BATCH, new BatchHandler());
+        httpServer.createContext(CONTEXT_RELOAD, new ReloadHandler());
+    }
+
+    public static void main(String... params) throws Exception {
+        int port = params.length > 0 ? Integer.parseInt(params[0]) : DEFAULT_PORT;
+        TranslitDictionaryFactory factory = TranslitDictionaryFactory.newInstance();
+        TranslitDictionary dictionary = params.length > 1
+                ? factory.newTranslitDictionary(params[1]) : factory.newTranslitDictionary();
+        TranslitServer server = new TranslitServer(new InetSocketAddress("localhost", port), new TranslitEngine(dictionary));
+        server.start();
+        if (!Boolean.getBoolean(QUIET_PROPERTY)) {
+            System.out.println(MessageFormat.format(MSG_STARTED, server.getAddress(),
+                    server.isVirtualThreads() ? "virtual threads" : "a cached thread pool"));
+        }
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    /**
+     * Stops the server, exchanges in progress are given the specified {@see delay} to finish
+     *
+     * @param delay seconds to wait
+     */
+    public void stop(int delay) {
+        httpServer.stop(delay);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delay, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    /**
+     * @return true if the exchanges are handled by virtual threads, false if by the cached thread pool because the
+     * runtime is older than Java 21
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public TranslitEngine getEngine() {
+        return engine.get();
+    }
+
+    /**
+     * Allows clients to load the dictionary with the specified {@see initialParam} by the reload request, the server
+     * never opens other paths on a request
+     *
+     * @param initialParam dictionary initial param
+     */
+    public void allowDictionary(String initialParam) {
+        allowedDictionaries.add(initialParam);
+    }
+
+    /**
+     * Loads a dictionary by the {@link TranslitDictionaryFactory} and replaces the engine
+     *
+     * @param initialParam dictionary initial param, the current one is used if null
+     * @return new engine
+     */
+    public TranslitEngine reload(String initialParam) {
+        String param = initialParam != null ? initialParam : dictionaryParam;
+        TranslitDictionaryFactory factory = TranslitDictionaryFactory.newInstance();
+        TranslitDictionary dictionary = param != null
+                ? factory.newTranslitDictionary(param) : factory.newTranslitDictionary();
+        TranslitEngine newEngine = new TranslitEngine(dictionary);
+        dictionaryParam = param;
+        if (param != null) allowedDictionaries.add(param);
+        engine.set(newEngine);
+        return newEngine;
+    }
+
+    /**
+     * @return executor which starts a virtual thread per task, or null if the runtime does not provide it
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<String, String>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return params;
+        for (String param : query.split("&")) {
+            int eq = param.indexOf('=');
+            if (eq < 0) {
+                params.put(URLDecoder.decode(param, "UTF-8"), "");
+            } else {
+                params.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Sends the specified error, if the response has been started already, the exchange is only closed and the client
+     * gets a truncated response
+     */
+    private static void sendError(HttpExchange exchange, int code, String text) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            exchange.close();
+            return;
+        }
+        sendText(exchange, code, text);
+    }
+
+    private static void sendText(HttpExchange exchange, int code, String text) throws IOException {
+        byte[] bytes = text.getBytes(UTF8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    /**
+     * Base class of handlers, it checks the request method and converts errors to responses
+     */
+    private abstract class TextHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    sendText(exchange, 405, "Method " + exchange.getRequestMethod() + " is not allowed");
+                    return;
+                }
+                handle(exchange, parseQuery(exchange));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, String.valueOf(e.getMessage()));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                sendError(exchange, 500, String.valueOf(e.getMessage()));
+            } finally {
+                exchange.close();
+            }
+        }
+
+        protected TranslitDictionary.Side getSide(Map<String, String> params) {
+            String side = params.get(PARAM_SIDE);
+            return side == null ? TranslitDictionary.Side.LEFT : TranslitDictionary.Side.valueOf(side.toUpperCase());
+        }
+
+        protected Writer startResponse(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            exchange.sendResponseHeaders(200, 0);
+            return new OutputStreamWriter(exchange.getResponseBody(), UTF8);
+        }
+
+        protected abstract void handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    private class TransliterateHandler extends TextHandler {
+
+        @Override
+        protected void handle(HttpExchange exchange, Map<String, String> params) throws IOException {
+            TranslitDictionary.Side side = getSide(params);
+            Reader reader = new InputStreamReader(exchange.getRequestBody(), UTF8);
+            TranslitWriter writer = new TranslitWriter(engine.get(), side, startResponse(exchange));
+            char[] buffer = new char[8192];
+            int len;
+            while ((len = reader.read(buffer)) != -1) {
+                writer.write(buffer, 0, len);
+            }
+            writer.close();
+        }
+    }
+
+    private class BatchHandler extends TextHandler {
+
+        @Override
+        protected void handle(HttpExchange exchange, Map<String, String> params) throws IOException {
+            TranslitDictionary.Side side = getSide(params);
+            TranslitEngine translitEngine = engine.get();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), UTF8));
+            Writer writer = startResponse(exchange);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                translitEngine.transliterate(line, side, writer);
+                writer.write('\n');
+            }
+            writer.close();
+        }
+    }
+
+    private class ReloadHandler extends TextHandler {
+
+        @Override
+        protected void handle(HttpExchange exchange, Map<String, String> params) throws IOException {
+            String param = params.get(PARAM_DICTIONARY);
+            if (param != null && !allowedDictionaries.contains(param)) {
+                sendText(exchange, 403, MessageFormat.format(ERR_NOT_ALLOWED, param));
+                return;
+            }
+            TranslitEngine newEngine = reload(param);
+            sendText(exchange, 200, newEngine.getDictionary().getDescription() + " "
+                    + newEngine.getDictionary().getVersion());
+        }
+    }
+}
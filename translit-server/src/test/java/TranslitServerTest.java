@@ -0,0 +1,45 @@
+import org.romppu.translit.TranslitDictionaryHolder;
+import org.romppu.translit.engine.TranslitEngine;
+import org.romppu.translit.server.TranslitServer;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+/**
+ * @author RP
+ */
+public class TranslitServerTest {
+
+    public static void main(String... params) {
+        try {
+            TranslitServer server = new TranslitServer(new InetSocketAddress("localhost", 0),
+                    new TranslitEngine(TranslitDictionaryHolder.getInstance().getDictionary()));
+            server.start();
+            URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/batch?side=RIGHT");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            OutputStream os = connection.getOutputStream();
+            os.write("SCH'i da kasha\npisch'a nasha.\n".getBytes("UTF-8"));
+            os.close();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println(line);
+            }
+            URL reload = new URL("http://localhost:" + server.getAddress().getPort() + "/reload?dictionary=/etc/passwd");
+            HttpURLConnection reloadConnection = (HttpURLConnection) reload.openConnection();
+            reloadConnection.setRequestMethod("POST");
+            if (reloadConnection.getResponseCode() != 403) {
+                throw new IllegalStateException("Reload of a not allowed dictionary: " + reloadConnection.getResponseCode());
+            }
+            server.stop(0);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
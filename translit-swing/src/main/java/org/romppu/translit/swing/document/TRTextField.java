@@ -74,10 +74,11 @@ public class TRTextField extends JTextField {
             @Override
             public void propertyChange(PropertyChangeEvent evt) {
                 try {
-                    String text = getText();
                     if (filter.getTranslitDocument() != null) {
-                        text = filter.getTranslitDocument().getString(TranslitDictionary.Side.LEFT);
+                        filter.getTranslitDocument().rebind(dictionary, TranslitDictionary.Side.LEFT);
+                        return;
                     }
+                    String text = getText();
                     TranslitDocument document = TranslitDocumentFactory.newInstance().newTranslitDocument(dictionary);
                     document.insertAt(0, text, TranslitDictionary.Side.LEFT);
                     filter.setTranslitDocument(document);
@@ -4,22 +4,34 @@ import org.romppu.translit.document.TranslitDocument;
 import org.romppu.translit.dictionary.TranslitDictionary;
 import org.romppu.translit.TranslitDocumentException;
 
+import javax.swing.*;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
 import javax.swing.text.*;
+import javax.swing.undo.CompoundEdit;
 import java.awt.*;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.util.concurrent.ExecutionException;
 
 /**
  * @author RP
  */
 public class TranslitDocumentFilter extends DocumentFilter {
 
+    public static final int DEFAULT_ASYNC_THRESHOLD = 1024;
+
     private PropertyChangeSupport changeSupport = new PropertyChangeSupport(this);
     private TranslitDocument translitDocument;
     private boolean translitMode;
     private Color translitForeground = Color.black;
     private Color textForeground = Color.gray;
     private String family = "Dialog";
+    private AttributeSet translitAttributes;
+    private AttributeSet textAttributes;
+    private boolean asynchronous;
+    private int asyncThreshold = DEFAULT_ASYNC_THRESHOLD;
+    private PreparedInsert preparedInsert;
 
     public TranslitDocumentFilter() {
     }
@@ -33,7 +45,11 @@ public class TranslitDocumentFilter extends DocumentFilter {
     public void replace(DocumentFilter.FilterBypass fb, int offset, int length, String text, AttributeSet attrs)
             throws BadLocationException {
         try {
-            if (isTranslitMode()) {
+            if (preparedInsert != null) {
+                applyPreparedInsert(fb, preparedInsert);
+            } else if (isTranslitMode() && isAsynchronous() && text != null && text.length() >= getAsyncThreshold()) {
+                insertInBackground(fb, offset, length, text, attrs);
+            } else if (isTranslitMode()) {
                 TranslitDocument.Mutation mutation = translitDocument.insertAt(offset, text, TranslitDictionary.Side.RIGHT);
                 String newString = translitDocument.getString(mutation.newElements(), TranslitDictionary.Side.LEFT);
                 int correction = newString.length() - text.length();
@@ -46,7 +62,9 @@ public class TranslitDocumentFilter extends DocumentFilter {
             } else {
                 translitDocument.insertStringAt(offset, text, TranslitDictionary.Side.LEFT);
                 fb.replace(offset, length, text, attrs);
-                resetAttributes(offset, text.length(), (StyledDocument) fb.getDocument());
+                if (fb.getDocument() instanceof StyledDocument) {
+                    resetAttributes(offset, text.length(), (StyledDocument) fb.getDocument());
+                }
             }
         } catch (TranslitDocumentException e) {
             e.printStackTrace();
@@ -54,21 +72,174 @@ public class TranslitDocumentFilter extends DocumentFilter {
         }
     }
 
+    /**
+     * Parses the specified {@see text} by a worker thread. The result is applied to the document later on the
+     * event dispatch thread together with the removal of the replaced {@see length} characters as a single
+     * undoable edit. The parsing depends only on the elements before the offset, so the replaced characters are
+     * removed after the parsed text is inserted in front of them.
+     */
+    private void insertInBackground(FilterBypass fb, int offset, int length, String text, AttributeSet attrs)
+            throws BadLocationException, TranslitDocumentException {
+        AbstractDocument document = (AbstractDocument) fb.getDocument();
+        submitInsert(document, document.createPosition(offset), document.createPosition(offset + length), text, attrs);
+    }
+
+    /**
+     * Submits parsing of the specified {@see text} to a worker thread, the replaced range is tracked by the
+     * specified positions, so edits made meanwhile move it. If the document has been edited before the result
+     * is applied, the text is submitted again against the current state, the event dispatch thread never parses.
+     * A failure is reported by {@link #reportFailure}.
+     */
+    private void submitInsert(final AbstractDocument document, final Position start, final Position end,
+                              final String text, final AttributeSet attrs) throws TranslitDocumentException {
+        final TranslitDocument.Mutation mutation = translitDocument.prepareInsert(
+                Math.min(start.getOffset(), translitDocument.getSize()), text, TranslitDictionary.Side.RIGHT);
+        new SwingWorker<Object, Object>() {
+            @Override
+            protected Object doInBackground() throws Exception {
+                translitDocument.parseMutation(mutation);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    if (translitDocument.getModificationCount() != mutation.getModificationCount()) {
+                        submitInsert(document, start, end, text, attrs);
+                        return;
+                    }
+                    int removed = Math.max(0, end.getOffset() - start.getOffset());
+                    preparedInsert = new PreparedInsert(mutation, attrs, removed);
+                    // the filter applies the prepared insert and ignores the arguments, the text is passed because
+                    // the document skips a replace of nothing with an empty text
+                    replaceAsOneEdit(document, mutation.getLeftShift(), mutation.oldElements().size(), text, attrs);
+                } catch (Exception e) {
+                    reportFailure(e);
+                } finally {
+                    preparedInsert = null;
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Replaces the specified range of the document, all undoable edits fired meanwhile are passed to the undo
+     * listeners of the document as one {@link CompoundEdit}
+     */
+    private static void replaceAsOneEdit(AbstractDocument document, int offset, int length, String text,
+                                         AttributeSet attrs) throws BadLocationException {
+        final CompoundEdit compoundEdit = new CompoundEdit();
+        UndoableEditListener collector = new UndoableEditListener() {
+            @Override
+            public void undoableEditHappened(UndoableEditEvent e) {
+                compoundEdit.addEdit(e.getEdit());
+            }
+        };
+        UndoableEditListener[] listeners = document.getUndoableEditListeners();
+        for (UndoableEditListener listener : listeners) {
+            document.removeUndoableEditListener(listener);
+        }
+        document.addUndoableEditListener(collector);
+        try {
+            document.replace(offset, length, text, attrs);
+        } finally {
+            document.removeUndoableEditListener(collector);
+            // the listeners are returned in the reverse order of adding
+            for (int i = listeners.length - 1; i >= 0; i--) {
+                document.addUndoableEditListener(listeners[i]);
+            }
+            compoundEdit.end();
+            if (compoundEdit.canUndo()) {
+                UndoableEditEvent event = new UndoableEditEvent(document, compoundEdit);
+                for (int i = listeners.length - 1; i >= 0; i--) {
+                    listeners[i].undoableEditHappened(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports a failure of a background insert to the listeners of the "insertFailure" property, the text of the
+     * failed insert is not in the document. If nobody listens to the property, the failure is rethrown on the event
+     * dispatch thread.
+     */
+    private void reportFailure(Exception failure) {
+        Throwable cause = failure instanceof ExecutionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        if (!changeSupport.hasListeners("insertFailure")) {
+            throw new IllegalStateException(cause);
+        }
+        changeSupport.firePropertyChange("insertFailure", null, cause);
+    }
+
+    /**
+     * Applies the specified prepared insert to the translit document and to the view and removes the replaced
+     * characters which follow the inserted text. The text of the view is built after the mutation is applied:
+     * a translit document with the default {@link TranslitDocument#parseMutation} parses the text while it applies
+     * the mutation.
+     */
+    private void applyPreparedInsert(FilterBypass fb, PreparedInsert insert)
+            throws BadLocationException, TranslitDocumentException {
+        preparedInsert = null;
+        TranslitDocument.Mutation mutation = insert.mutation;
+        translitDocument.applyMutation(mutation);
+        String newString = translitDocument.getString(mutation.newElements(), TranslitDictionary.Side.LEFT);
+        fb.replace(mutation.getLeftShift(), mutation.oldElements().size(), newString, insert.attributes);
+        if (insert.removed > 0) {
+            remove(fb, mutation.getLeftShift() + newString.length(), insert.removed);
+        }
+        if (fb.getDocument() instanceof StyledDocument) {
+            resetAttributes(mutation.getLeftShift(), newString.length(), (StyledDocument) fb.getDocument());
+        }
+    }
+
     public void resetAttributes(StyledDocument document) throws TranslitDocumentException {
        resetAttributes(0, translitDocument.getSize(), document);
     }
 
+    /**
+     * Applies transliteration and text styles to the specified range. Consecutive elements of the same kind are
+     * grouped into runs and every run is styled by a single {@link StyledDocument#setCharacterAttributes} call,
+     * so the cost depends on the number of runs rather than on the number of characters.
+     */
     public void resetAttributes(int offset, int len, StyledDocument document) throws TranslitDocumentException {
-        for (int i = offset; i < offset + len + 1; i++) {
-            if (i >= translitDocument.getSize()) break;
-            TranslitDocument.Element element = translitDocument.getElement(i);
-            MutableAttributeSet attributeSet = (MutableAttributeSet) document.getCharacterElement(i).getAttributes();
-            StyleConstants.setFontFamily(attributeSet, getFamily());
-            StyleConstants.setForeground(attributeSet,
-                    element.isTransliteration() ? getTranslitForeground() : getTextForeground());
+        int end = Math.min(Math.min(offset + len + 1, translitDocument.getSize()), document.getLength());
+        int runStart = offset;
+        while (runStart < end) {
+            boolean transliteration = translitDocument.isTranslitAt(runStart);
+            int runEnd = runStart + 1;
+            while (runEnd < end && translitDocument.isTranslitAt(runEnd) == transliteration) {
+                runEnd++;
+            }
+            document.setCharacterAttributes(runStart, runEnd - runStart,
+                    transliteration ? getTranslitAttributes() : getTextAttributes(), false);
+            runStart = runEnd;
         }
     }
 
+    /**
+     * Returns shared immutable attributes of transliterated text
+     */
+    public AttributeSet getTranslitAttributes() {
+        if (translitAttributes == null) translitAttributes = createAttributes(getTranslitForeground());
+        return translitAttributes;
+    }
+
+    /**
+     * Returns shared immutable attributes of not transliterated text
+     */
+    public AttributeSet getTextAttributes() {
+        if (textAttributes == null) textAttributes = createAttributes(getTextForeground());
+        return textAttributes;
+    }
+
+    private AttributeSet createAttributes(Color foreground) {
+        StyleContext context = StyleContext.getDefaultStyleContext();
+        AttributeSet attributes = context.addAttribute(SimpleAttributeSet.EMPTY, StyleConstants.FontFamily, getFamily());
+        return context.addAttribute(attributes, StyleConstants.Foreground, foreground);
+    }
+
     public void remove(FilterBypass fb, int offset, int length) throws
             BadLocationException {
 
@@ -103,6 +274,7 @@ public class TranslitDocumentFilter extends DocumentFilter {
     public void setTranslitForeground(Color translitForeground) {
         Color old = getTranslitForeground();
         this.translitForeground = translitForeground;
+        translitAttributes = null;
         changeSupport.firePropertyChange("translitForeground", old, translitForeground);
     }
 
@@ -113,6 +285,7 @@ public class TranslitDocumentFilter extends DocumentFilter {
     public void setTextForeground(Color textForeground) {
         Color old = getTextForeground();
         this.textForeground = textForeground;
+        textAttributes = null;
         changeSupport.firePropertyChange("textForeground", old, textForeground);
     }
 
@@ -124,11 +297,55 @@ public class TranslitDocumentFilter extends DocumentFilter {
         changeSupport.removePropertyChangeListener(prop, listener);
     }
 
+    /**
+     * Indicates that large texts are transliterated by a worker thread, see {@link #getAsyncThreshold()}
+     */
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    public void setAsynchronous(boolean asynchronous) {
+        boolean old = isAsynchronous();
+        this.asynchronous = asynchronous;
+        changeSupport.firePropertyChange("asynchronous", old, asynchronous);
+    }
+
+    /**
+     * Returns minimal length of a text which is transliterated by a worker thread in the asynchronous mode.
+     * Shorter texts are transliterated immediately.
+     */
+    public int getAsyncThreshold() {
+        return asyncThreshold;
+    }
+
+    public void setAsyncThreshold(int asyncThreshold) {
+        int old = getAsyncThreshold();
+        this.asyncThreshold = asyncThreshold;
+        changeSupport.firePropertyChange("asyncThreshold", old, asyncThreshold);
+    }
+
     public String getFamily() {
         return family;
     }
 
     public void setFamily(String family) {
         this.family = family;
+        translitAttributes = null;
+        textAttributes = null;
+    }
+
+    /**
+     * Result of a background transliteration waiting to be applied to the document
+     */
+    private static class PreparedInsert {
+        private final TranslitDocument.Mutation mutation;
+        private final AttributeSet attributes;
+        private final int removed;
+
+        private PreparedInsert(TranslitDocument.Mutation mutation, AttributeSet attributes, int removed) {
+            this.mutation = mutation;
+            this.attributes = attributes;
+            this.removed = removed;
+        }
     }
 }
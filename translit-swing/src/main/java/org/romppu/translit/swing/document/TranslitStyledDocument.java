@@ -5,10 +5,15 @@ import org.romppu.translit.dictionary.TranslitDictionary;
 import org.romppu.translit.document.TranslitDocument;
 
 import javax.swing.*;
+import javax.swing.event.UndoableEditEvent;
 import javax.swing.text.*;
+import javax.swing.undo.CompoundEdit;
 import java.awt.*;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Created with IntelliJ IDEA.
@@ -19,11 +24,16 @@ import java.beans.PropertyChangeSupport;
  */
 public class TranslitStyledDocument extends DefaultStyledDocument {
 
+    public static final int DEFAULT_ASYNC_THRESHOLD = 1024;
+
     private PropertyChangeSupport changeSupport = new PropertyChangeSupport(this);
     private TranslitDocument translitDocument;
     private boolean translitMode;
     private Color translitForeground;
     private Color textForeground;
+    private boolean asynchronous;
+    private int asyncThreshold = DEFAULT_ASYNC_THRESHOLD;
+    private CompoundEdit compoundEdit;
 
     public void remove(int offs, int len) throws BadLocationException {
         translitDocument.removeElements(offs, len);
@@ -31,23 +41,185 @@ public class TranslitStyledDocument extends DefaultStyledDocument {
     }
 
     public void insertString(int offset, String str, AttributeSet attrs) throws BadLocationException {
+        if (isAsynchronous() && str != null && str.length() >= getAsyncThreshold()) {
+            try {
+                insertInBackground(offset, 0, str, attrs);
+            } catch (TranslitDocumentException e) {
+                throw new BadLocationException(str, offset);
+            }
+            return;
+        }
         try {
             TranslitDictionary.Side side = isTranslitMode() ? TranslitDictionary.Side.RIGHT : TranslitDictionary.Side.LEFT;
             TranslitDocument.Mutation mutation = getTranslitDocument().insertAt(offset, str, side);
-            int removed = (offset - mutation.getOffset());
+            insertMutation(mutation, attrs, 0);
+        } catch (TranslitDocumentException e) {
+            throw new BadLocationException(str, offset);
+        }
+    }
+
+    /**
+     * A large text replacing a range is parsed in the background, the range is removed when the parsed text is
+     * inserted, so the replacement is a single undoable edit
+     */
+    @Override
+    public void replace(int offset, int length, String text, AttributeSet attrs) throws BadLocationException {
+        if (length > 0 && isAsynchronous() && text != null && text.length() >= getAsyncThreshold()) {
+            try {
+                insertInBackground(offset, length, text, attrs);
+            } catch (TranslitDocumentException e) {
+                throw new BadLocationException(text, offset);
+            }
+            return;
+        }
+        super.replace(offset, length, text, attrs);
+    }
+
+    /**
+     * Parses the specified {@see text} by a worker thread and applies the result on the event dispatch thread
+     * together with the removal of the replaced {@see length} characters. The parsing depends only on the elements
+     * before the offset, so the replaced characters are removed after the parsed text is inserted in front of them.
+     */
+    private void insertInBackground(int offset, int length, String text, AttributeSet attrs)
+            throws TranslitDocumentException, BadLocationException {
+        TranslitDictionary.Side side = isTranslitMode() ? TranslitDictionary.Side.RIGHT : TranslitDictionary.Side.LEFT;
+        submitInsert(createPosition(offset), createPosition(offset + length), text, side, attrs);
+    }
+
+    /**
+     * Submits parsing of the specified {@see text} to a worker thread, the replaced range is tracked by the
+     * specified positions, so edits made meanwhile move it. If the document has been edited before the result
+     * is applied, the text is submitted again against the current state, the event dispatch thread never parses.
+     * A failure is reported by {@link #reportFailure}.
+     */
+    private void submitInsert(final Position start, final Position end, final String text,
+                              final TranslitDictionary.Side side, final AttributeSet attrs)
+            throws TranslitDocumentException {
+        final TranslitDocument translit = getTranslitDocument();
+        final TranslitDocument.Mutation mutation = translit.prepareInsert(
+                Math.min(start.getOffset(), translit.getSize()), text, side);
+        new SwingWorker<Object, Object>() {
+            @Override
+            protected Object doInBackground() throws Exception {
+                translit.parseMutation(mutation);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    if (translit.getModificationCount() != mutation.getModificationCount()) {
+                        submitInsert(start, end, text, side, attrs);
+                        return;
+                    }
+                    int removed = Math.max(0, end.getOffset() - start.getOffset());
+                    translit.applyMutation(mutation);
+                    insertMutation(mutation, attrs, removed);
+                } catch (Exception e) {
+                    reportFailure(e);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Reports a failure of a background insert to the listeners of the "insertFailure" property, the text of the
+     * failed insert is not in the document. If nobody listens to the property, the failure is rethrown on the event
+     * dispatch thread.
+     */
+    private void reportFailure(Exception failure) {
+        Throwable cause = failure instanceof ExecutionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        if (!changeSupport.hasListeners("insertFailure")) {
+            throw new IllegalStateException(cause);
+        }
+        changeSupport.firePropertyChange("insertFailure", null, cause);
+    }
+
+    /**
+     * Replaces the text of the old elements of the specified mutation with the text of its new elements.
+     * Elements which are not changed at the beginning of the mutation are skipped, the rest is replaced by one
+     * remove and one bulk insert of prepared runs, so the whole mutation is a single undoable edit. The specified
+     * amount of {@see removed} characters which follow the inserted text is removed within the same edit.
+     */
+    private void insertMutation(TranslitDocument.Mutation mutation, AttributeSet attrs, int removed)
+            throws BadLocationException {
+        TranslitDocument.StringBuildingContext context = new TranslitDocument.StringBuildingContext(TranslitDictionary.Side.LEFT);
+        List<TranslitDocument.Element> oldElements = mutation.oldElements();
+        List<TranslitDocument.Element> newElements = mutation.newElements();
+        int start = mutation.getLeftShift();
+        int common = 0;
+        while (common < oldElements.size() && common < newElements.size()
+                && oldElements.get(common).isTransliteration() == newElements.get(common).isTransliteration()
+                && oldElements.get(common).getStringValue(context).equals(newElements.get(common).getStringValue(context))) {
+            start += oldElements.get(common).getStringValue(context).length();
+            common++;
+        }
+        int replaced = 0;
+        for (int i = common; i < oldElements.size(); i++) {
+            replaced += oldElements.get(i).getStringValue(context).length();
+        }
+        AttributeSet base = attrs != null ? attrs.copyAttributes() : SimpleAttributeSet.EMPTY;
+        StringBuilder text = new StringBuilder();
+        List<int[]> runs = new ArrayList<int[]>();
+        for (int i = common; i < newElements.size(); i++) {
+            TranslitDocument.Element element = newElements.get(i);
+            int kind = element.isTransliteration() ? 1 : 0;
+            if (runs.isEmpty() || runs.get(runs.size() - 1)[0] != kind) {
+                runs.add(new int[]{kind, text.length()});
+            }
+            text.append(element.getStringValue(context));
+        }
+        compoundEdit = new CompoundEdit();
+        try {
+            if (replaced > 0) {
+                super.remove(start, replaced);
+            }
+            if (text.length() > 0) {
+                AttributeSet[] runAttributes = {getRunAttributes(base, false), getRunAttributes(base, true)};
+                char[] chars = text.toString().toCharArray();
+                ElementSpec[] specs = new ElementSpec[runs.size()];
+                for (int i = 0; i < runs.size(); i++) {
+                    int runEnd = i + 1 < runs.size() ? runs.get(i + 1)[1] : chars.length;
+                    specs[i] = new ElementSpec(runAttributes[runs.get(i)[0]], ElementSpec.ContentType,
+                            chars, runs.get(i)[1], runEnd - runs.get(i)[1]);
+                }
+                if (text.indexOf("\n") < 0) {
+                    insert(start, specs);
+                } else {
+                    // paragraph breaks are created by the regular insertion only
+                    super.insertString(start, text.toString(), base);
+                    for (ElementSpec spec : specs) {
+                        setCharacterAttributes(start + spec.getOffset(), spec.getLength(), spec.getAttributes(), true);
+                    }
+                }
+            }
             if (removed > 0) {
-                super.remove(mutation.getOffset(), removed);
+                remove(start + text.length(), removed);
             }
-            if (!mutation.lastNewElement().isTransliteration()) {
-                StyleConstants.setForeground((MutableAttributeSet)attrs, getTextForeground());
-            } else {
-                StyleConstants.setForeground((MutableAttributeSet)attrs, getTranslitForeground());
+        } finally {
+            CompoundEdit edit = compoundEdit;
+            compoundEdit = null;
+            edit.end();
+            if (edit.canUndo()) {
+                super.fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
             }
-            super.insertString(mutation.getOffset(),
-                    mutation.lastNewElement().getStringValue(new TranslitDocument.StringBuildingContext(TranslitDictionary.Side.LEFT)),
-                    attrs);
-        } catch (TranslitDocumentException e) {
-            throw new BadLocationException(str, offset);
+        }
+    }
+
+    private AttributeSet getRunAttributes(AttributeSet base, boolean transliteration) {
+        Color foreground = transliteration ? getTranslitForeground() : getTextForeground();
+        if (foreground == null) return base;
+        return getAttributeContext().addAttribute(base, StyleConstants.Foreground, foreground);
+    }
+
+    @Override
+    protected void fireUndoableEditUpdate(UndoableEditEvent e) {
+        if (compoundEdit != null) {
+            compoundEdit.addEdit(e.getEdit());
+        } else {
+            super.fireUndoableEditUpdate(e);
         }
     }
 
@@ -79,6 +251,33 @@ public class TranslitStyledDocument extends DefaultStyledDocument {
         changeSupport.removePropertyChangeListener(prop, listener);
     }
 
+    /**
+     * Indicates that large texts are transliterated by a worker thread, see {@link #getAsyncThreshold()}
+     */
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    public void setAsynchronous(boolean asynchronous) {
+        boolean old = isAsynchronous();
+        this.asynchronous = asynchronous;
+        changeSupport.firePropertyChange("asynchronous", old, asynchronous);
+    }
+
+    /**
+     * Returns minimal length of a text which is transliterated by a worker thread in the asynchronous mode.
+     * Shorter texts are transliterated immediately.
+     */
+    public int getAsyncThreshold() {
+        return asyncThreshold;
+    }
+
+    public void setAsyncThreshold(int asyncThreshold) {
+        int old = getAsyncThreshold();
+        this.asyncThreshold = asyncThreshold;
+        changeSupport.firePropertyChange("asyncThreshold", old, asyncThreshold);
+    }
+
     public Color getTranslitForeground() {
         return translitForeground;
     }